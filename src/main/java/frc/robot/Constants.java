@@ -1,5 +1,6 @@
 package frc.robot;
 
+import com.pathplanner.lib.config.PIDConstants;
 import com.pathplanner.lib.config.RobotConfig;
 
 import edu.wpi.first.math.geometry.Pose2d;
@@ -13,11 +14,58 @@ public class Constants {
     // Translation from the center of the robot to the camera (robot coordinates).
     public static final Translation3d kCameraToRobot =
         new Translation3d(0, -0.064, 0.864); // TODO: Not final
+    // The camera is mounted on its side, rolled about its lens axis so tx measures the angle below
+    // the horizon and ty the bearing to the right. LimelightSubsystem.getPose reads the angles that way
+    public static final double kCameraRollDegrees = 90;
     public static final double kResolutionWidth = 1280;
     public static final double kResolutionHeight = 960;
     // Limelight publish to `updateData()` delay
     public static final double delayMillis = 10; // TODO: Make more accurate
+
+    // Simulated camera (Limelight 3 field of view)
+    public static final double kSimHorizontalFovDegrees = 62.5;
+    public static final double kSimVerticalFovDegrees = 48.9;
+    public static final double kSimFrameRate = 30.0; // frames per second
+    public static final double kSimPipelineLatencyMillis = 15.0;
+    public static final double kSimCaptureLatencyMillis = 10.0;
+    public static final double kSimAngleNoiseDegrees = 0.1; // std dev of tx/ty
+    public static final double kSimPoseNoiseMeters = 0.03; // std dev of botpose translation
+    public static final double kSimDropoutProbability = 0.05; // chance a frame is never published
+    public static final double kSimMaxDistanceMeters = 5.0;
+    public static final double kTagSizeMeters = 0.1651;
   }
+    public static final class OnboardVisionConstants {
+        // Fallback AprilTag detection on the roboRIO, used when the Limelight is unplugged or saturated
+        public static final boolean ENABLED = false;
+        // USB camera index, or a directory of recorded frames to replay instead of a camera
+        public static final int USB_CAMERA_INDEX = 0;
+        public static final String RECORDED_FRAMES_DIRECTORY = "";
+        // Translation from the center of the robot to the USB camera (robot coordinates), facing forward.
+        // Placeholder for a front mounted camera, the camera has not been mounted on the robot yet
+        public static final Translation3d ROBOT_TO_CAMERA =
+            new Translation3d(0.2, 0.0, 0.5);
+        public static final int FRAME_WIDTH = 640;
+        public static final int FRAME_HEIGHT = 480;
+        // Camera intrinsics in pixels (calibrate for the actual camera)
+        public static final double FX = 545.0;
+        public static final double FY = 545.0;
+        public static final double CX = FRAME_WIDTH / 2.0;
+        public static final double CY = FRAME_HEIGHT / 2.0;
+        // 2025 tags are 6.5 inches across the black border
+        public static final double TAG_SIZE_METERS = Units.Inches.of(6.5).in(Units.Meters);
+        // Bounded worker pool; frames are dropped when every worker is busy and the queue is full
+        public static final int WORKER_THREADS = 2;
+        public static final int MAX_QUEUED_FRAMES = 1;
+        // Predicted tag boxes are grown by this factor before cropping
+        public static final double ROI_MARGIN = 2.5;
+        // Fall back to full frame detection if no tag was seen for this long
+        public static final double ROI_TIMEOUT_SECONDS = 0.5;
+        // Reject detections that are probably wrong
+        public static final double MIN_DECISION_MARGIN = 30.0;
+        public static final double MAX_TAG_DISTANCE_METERS = 4.5;
+        // Observations older than this are not handed to the pose estimator
+        public static final double MAX_OBSERVATION_AGE_SECONDS = 0.25;
+    }
     public static final class Locations {
         // lets say that the distance from april tag is 0.5 m, kind of eyeballed some measurements on pathplanner, should test to make sure
         // correct
@@ -37,9 +85,88 @@ public class Constants {
             new Pose2d(3.952, 2.755, new Rotation2d(1.0/3 * Math.PI)),
             new Pose2d(5.321, 2.906, new Rotation2d(2.0/3 * Math.PI))
         };
+        // 0.5 m out from the coral station april tags (12 and 13), facing them
+        public static final Pose2d[] coralStationLocations = {
+            new Pose2d(1.145, 1.060, Rotation2d.fromDegrees(-126)),
+            new Pose2d(1.145, 6.992, Rotation2d.fromDegrees(126))
+        };
+    }
+    public static final class PathfinderConstants {
+        // Paths keep this far from obstacles when there is room, cells closer cost more to cross
+        public static final double CLEARANCE_METERS = 0.6;
+        public static final double OBSTACLE_PENALTY = 3.0; // extra cost per cell right next to an obstacle
+        // Goals sit inside the inflated obstacles, the last stretch within this radius is driven straight
+        public static final double GOAL_SEED_RADIUS_METERS = 0.9;
+        // An end pose this close to a precomputed goal uses its cost-to-go map
+        public static final double GOAL_MATCH_TOLERANCE_METERS = 0.05;
+        // Constraints of the paths driven to the goals when settings.json could not be loaded,
+        // otherwise they follow the physical limits of the drivetrain
+        public static final double MAX_SPEED_MPS = 3.0;
+        public static final double MAX_ACCELERATION_MPSS = 3.0;
+        public static final double MAX_ANGULAR_SPEED_RPS = 2 * Math.PI;
+        public static final double MAX_ANGULAR_ACCELERATION_RPSS = 4 * Math.PI;
+        // Replan when the robot stays this far from the path setpoint for the debounce time
+        public static final double REPLAN_ERROR_METERS = 0.5;
+        public static final double REPLAN_HEADING_ERROR_RADIANS = Math.toRadians(30);
+        public static final double REPLAN_DEBOUNCE_SECONDS = 0.1;
+        // Plans taking longer than this are dropped, and the next replan waits for the cooldown
+        public static final double REPLAN_TIMEOUT_SECONDS = 0.1;
+        public static final double REPLAN_COOLDOWN_SECONDS = 0.5;
+    }
+    public static final class DriveLimitConstants {
+        // Height of the center of mass with the elevator down, and how far it rises with the carriage at the top level
+        public static final double CG_HEIGHT_METERS = 0.25;
+        public static final double CG_RISE_AT_TOP_METERS = 0.35;
+        // Share of the tipping acceleration the robot may use
+        public static final double TIP_SAFETY_FACTOR = 0.6;
+        // Share of the motor torque, traction and free speed limits used, leaves headroom for the feedback
+        public static final double LIMIT_SAFETY_FACTOR = 0.9;
+        // The robot can always stop within this distance, which caps the speed with the elevator up
+        public static final double STOP_DISTANCE_METERS = 1.2;
+        // The acceleration builds up over this long instead of jolting a raised robot
+        public static final double ACCELERATION_RAMP_SECONDS = 0.1;
+    }
+    public static final class TargetSelectionConstants {
+        // Elevator levels the reef targets are scored at
+        public static final int[] SCORING_LEVELS = {1, 2, 3};
+        // The drive estimates are only recomputed after the robot moved or turned this much
+        public static final double POSE_UPDATE_DISTANCE_METERS = 0.02;
+        public static final double POSE_UPDATE_ANGLE_RADIANS = Math.toRadians(1);
+        // The elevator only starts raising on the final approach, for about this long
+        public static final double ELEVATOR_OVERLAP_SECONDS = AlignConstants.HANDOFF_DISTANCE_METERS / AlignConstants.MAX_SPEED_MPS;
+    }
+    public static final class AutoConstants {
+        // Level the autos score at, the elevator is raised to it on the approach to the reef. The raiseElevator
+        // markers sit where at least ~1.6 m of path is left, enough for the raise plus the raise margin
+        public static final int SCORING_LEVEL = 1;
+    }
+    public static final class ScoreConstants {
+        // The shot is fired this long before the elevator's predicted arrival, the coral takes longer to reach the wheels
+        public static final double SHOT_LEAD_SECONDS = 0.1;
+        // The elevator starts raising this much earlier than the drive needs to reach the branch
+        public static final double RAISE_MARGIN_SECONDS = 0.2;
+    }
+    public static final class AlignConstants {
+        // Path following hands off to the vision servo inside this distance of the target
+        public static final double HANDOFF_DISTANCE_METERS = 1.0;
+        public static final double TRANSLATION_KP = 3.0; // (m/s) per meter of error
+        public static final double ROTATION_KP = 4.0; // (rad/s) per radian of error
+        public static final double MAX_SPEED_MPS = 2.0;
+        public static final double MAX_ACCELERATION_MPSS = 3.0;
+        public static final double MAX_ANGULAR_SPEED_RPS = 2 * Math.PI;
+        // Done criteria
+        public static final double POSITION_TOLERANCE_METERS = 0.02;
+        public static final double ANGLE_TOLERANCE_RADIANS = Math.toRadians(1.5);
+        public static final double SPEED_TOLERANCE_MPS = 0.1;
+        public static final int SETTLE_CYCLES = 3;
+        public static final double TIMEOUT_SECONDS = 2.0;
     }
     public static final class DriveConstants {
         public static RobotConfig pathPlannerConfig;
+        // Path following controller gains of the autos, shared by AutoBuilder, the compiled trajectory
+        // follower and the auto warm-up
+        public static final PIDConstants AUTO_TRANSLATION_PID = new PIDConstants(5.0, 0.0, 0.0);
+        public static final PIDConstants AUTO_ROTATION_PID = new PIDConstants(3.0, 0.0, 0.0);
         // Chassis configuration
         public static final double TRACK_WIDTH = Units.Inches.of(26.5).in(Units.Meters);
         // Distance between centers of right and left wheels on robot
@@ -129,10 +256,27 @@ public class Constants {
         // DIO ports for limit switches
         public static final int ELEVATOR_TOP_LIMIT_SWITCH_ID = 0;
         public static final int ELEVATOR_BOTTOM_LIMIT_SWITCH_ID = 1;
+
+        // Simulation model, estimates until measured on the robot
+        public static final double CARRIAGE_MASS_KG = 6.0;
+        public static final double DRUM_RADIUS_METERS = 0.0225;
+        // Encoder units (motor rotations) per meter of carriage travel
+        public static final double ROTATIONS_PER_METER = GEAR_RATIO / (2 * Math.PI * DRUM_RADIUS_METERS);
     }
     public static final class ShooterConstants {
         // CAN IDs
         public static final int SHOOTER_PRIMARY_MOTOR_ID = 11; // TODO: NOT FINAL
         public static final int SHOOTER_SECONDARY_MOTOR_ID = 12; // TODO: ALSO NOT FINAL
+        // Coral detection from the motors, uncalibrated placeholders until ./gradlew calibrateCoralSignature
+        // is run on logged intakes
+        // Rise of the motor current over its free spinning baseline with a coral in the wheels
+        public static final double CORAL_CURRENT_RISE_AMPS = 6.0;
+        // Drop of the wheel speed below its free spinning baseline with a coral in the wheels, as a fraction
+        public static final double CORAL_VELOCITY_DIP = 0.05;
+        // Free spinning current of the shooter motors, used for shots before an intake learned it
+        public static final double CORAL_FREE_CURRENT_AMPS = 2.0;
+        // How long the load has to last for an entry, and to be gone for an exit
+        public static final double CORAL_ENTRY_DEBOUNCE_SECONDS = 0.02;
+        public static final double CORAL_EXIT_DEBOUNCE_SECONDS = 0.04;
     }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.util.LatencyTracer;
 import frc.robot.util.Logger;
 
 /**
@@ -44,7 +45,11 @@ public class Robot extends TimedRobot {
 
   @Override
   public void robotPeriodic() {
+    // Driver station data was just refreshed, this is the origin of driver input latency
+    LatencyTracer.markLoopStart();
+
     CommandScheduler.getInstance().run();
+    LatencyTracer.periodic();
     
     // Reset emergency stop indicator after it's been displayed for a while
     // This ensures it's visible but doesn't stay on permanently
@@ -60,7 +65,10 @@ public class Robot extends TimedRobot {
   public void disabledInit() {}
 
   @Override
-  public void disabledPeriodic() {}
+  public void disabledPeriodic() {
+    // load and warm up the selected auto so it starts without a stall
+    robotContainer.disabledPeriodic();
+  }
 
   @Override
   public void disabledExit() {}
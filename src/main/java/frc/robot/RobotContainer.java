@@ -4,14 +4,33 @@
 
 package frc.robot;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.auto.NamedCommands;
+import com.pathplanner.lib.commands.PathPlannerAuto;
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
 
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import frc.robot.commands.CompiledAutoCommand;
 import frc.robot.commands.DefaultDriveCommand;
 import frc.robot.commands.LimelightDebugCommand;
+import frc.robot.commands.ScoreCoralCommand;
 import frc.robot.commands.TestAllCoralPos;
 import frc.robot.commands.ElevatorTestCommand;
 import frc.robot.commands.EmergencyStopCommand;
@@ -22,8 +41,15 @@ import frc.robot.commands.CalibrateElevatorCommand;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.ElevatorSubsystem;
 import frc.robot.subsystems.LimelightSubsystem;
+import frc.robot.subsystems.OnboardAprilTagVision;
+import frc.robot.subsystems.PoseEstimator;
+import frc.robot.subsystems.ReefTargetSelector;
+import frc.robot.subsystems.SimulatedLimelight;
 import frc.robot.subsystems.ShooterSubsystem;
 import frc.robot.subsystems.ShooterSubsystem.ShooterState;
+import frc.robot.util.CompiledTrajectoryFile;
+import frc.robot.util.LazyAutoChooser;
+import frc.robot.util.Logger;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
 import edu.wpi.first.wpilibj.XboxController;
 
@@ -41,6 +67,12 @@ public class RobotContainer {
 
   private final LimelightSubsystem limelightSubsystem = new LimelightSubsystem();
   private final DriveSubsystem driveSubsystem = new DriveSubsystem(limelightSubsystem);
+  // Ranks the reef targets by time to score every cycle
+  private final ReefTargetSelector reefTargetSelector = new ReefTargetSelector(driveSubsystem, elevatorSubsystem);
+  // Optional on-RIO AprilTag detection, used when the Limelight is unplugged or saturated
+  private final OnboardAprilTagVision onboardVision;
+  // Simulated limelight that publishes to the limelight table in simulation
+  private final SimulatedLimelight simulatedLimelight;
 
   // The driver's controllers
   // Primary controller (port 0) is for the main driver
@@ -52,7 +84,9 @@ public class RobotContainer {
   private static final double DEADBAND = 0.1;
   
   // setup the AutoBuilder with all pathplanner paths in place
-  private final SendableChooser<Command> autoChooser;
+  private final LazyAutoChooser autoChooser;
+  // trajectories compiled at build time, null when not compiled
+  private CompiledTrajectoryFile compiledTrajectories;
 
 
   public LimelightSubsystem getLimelightSubsystem() {
@@ -93,22 +127,145 @@ public class RobotContainer {
   }
 
   public RobotContainer() {
+    // the drive slows its speed, acceleration and jerk down as the elevator raises the center of mass
+    driveSubsystem.setElevatorPositionSupplier(elevatorSubsystem::getCurrentPosition);
+    if (Constants.OnboardVisionConstants.ENABLED) {
+      onboardVision = new OnboardAprilTagVision(driveSubsystem::getPose);
+      driveSubsystem.addVisionSource(onboardVision);
+    } else {
+      onboardVision = null;
+    }
+    if (RobotBase.isSimulation()) {
+      simulatedLimelight = new SimulatedLimelight(
+          "limelight",
+          driveSubsystem::getSimulatedPose,
+          new Transform3d(Constants.LimelightConstants.kCameraToRobot,
+              new Rotation3d(Math.toRadians(Constants.LimelightConstants.kCameraRollDegrees), 0, 0)));
+    } else {
+      simulatedLimelight = null;
+    }
+
     configureBindings();
+    configureSysIdCommands();
     // Set up the default command for the drive subsystem
     driveSubsystem.setDefaultCommand(
         new DefaultDriveCommand(
             driveSubsystem,
-            () -> getForwardInput() * 0.5,  // Forward/backward
-            () -> getStrafeInput() * 0.5,   // Left/right
+            // full speed, the drive limits it by the elevator height
+            () -> getForwardInput(),  // Forward/backward
+            () -> getStrafeInput(),   // Left/right
             () -> getRotationInput() * 0.5  // Rotation
         )
     );
 
-    autoChooser = AutoBuilder.buildAutoChooser("shish-test");
-
-      // Register Named Commands for Auton Routines
+      // Register Named Commands for Auton Routines, before any auto is built from them
     NamedCommands.registerCommand("shootBottomLevel", new ShootCommand(shooterSubsystem, elevatorSubsystem));
     NamedCommands.registerCommand("prepareShooter", new PrepareShooterCommand(shooterSubsystem));
+    // Shoots as soon as the elevator is at the height it was raised to on the approach, and leaves
+    // lowering it to the lowerElevator marker of the next path
+    NamedCommands.registerCommand("scoreCoral", Commands.waitUntil(elevatorSubsystem::atTargetPosition)
+        .andThen(new ShootCommand.ShootCoralCommand(shooterSubsystem, elevatorSubsystem)));
+
+    // Event markers, run while the robot is driving. They only set a target and finish right away, so
+    // they are not cut short when the path ends and the mechanisms keep moving into the next command
+    NamedCommands.registerCommand("raiseElevator",
+        Commands.runOnce(() -> elevatorSubsystem.goToLevel(Constants.AutoConstants.SCORING_LEVEL), elevatorSubsystem));
+    NamedCommands.registerCommand("lowerElevator",
+        Commands.runOnce(() -> elevatorSubsystem.goToLevel(0), elevatorSubsystem));
+    NamedCommands.registerCommand("armIntake",
+        Commands.runOnce(shooterSubsystem::prepareForIntake, shooterSubsystem));
+
+    autoChooser = buildAutoChooser("shish-test");
+  }
+
+  /**
+   * Builds the auto chooser from the autos compiled at build time, so no paths are parsed or
+   * generated on the robot. Falls back to the PathPlanner autos when nothing was compiled.
+   * Autos are only loaded when selected, see {@link LazyAutoChooser}.
+   */
+  private LazyAutoChooser buildAutoChooser(String defaultAutoName) {
+    compiledTrajectories = CompiledTrajectoryFile.load()
+        .filter(file -> !file.getAutos().isEmpty())
+        .orElse(null);
+    List<String> autoNames = compiledTrajectories != null
+        ? new ArrayList<>(compiledTrajectories.getAutos().keySet())
+        : AutoBuilder.getAllAutoNames();
+    return new LazyAutoChooser(autoNames, defaultAutoName, this::buildAuto, this::preloadAuto);
+  }
+
+  private Command buildAuto(String autoName) {
+    if (compiledTrajectories != null) {
+      return new CompiledAutoCommand(driveSubsystem, compiledTrajectories, compiledTrajectories.getAutos().get(autoName));
+    }
+    return new PathPlannerAuto(autoName);
+  }
+
+  /**
+   * Reads the trajectories of an auto for an alliance and runs the path following code on them,
+   * without driving the robot. Runs on the auto chooser's background thread.
+   */
+  private void preloadAuto(String autoName, boolean red) {
+    try {
+      if (compiledTrajectories != null) {
+        for (CompiledTrajectoryFile.Step step : compiledTrajectories.getAutos().get(autoName).steps) {
+          if (step.type == CompiledTrajectoryFile.STEP_PATH) {
+            // reading every state pages the mapped trajectory in
+            CompiledTrajectoryFile.Trajectory trajectory = compiledTrajectories.getTrajectory(step.name, red);
+            List<PathPlannerTrajectoryState> states = new ArrayList<>();
+            for (int i = 0; i < trajectory.getStateCount(); i++) {
+              states.add(trajectory.getState(i));
+            }
+            exerciseFollower(states);
+          }
+        }
+      } else {
+        for (PathPlannerPath path : PathPlannerAuto.getPathGroupFromAutoFile(autoName)) {
+          PathPlannerPath alliancePath = red ? path.flipPath() : path;
+          alliancePath.getIdealTrajectory(Constants.DriveConstants.pathPlannerConfig)
+              .ifPresent(trajectory -> exerciseFollower(trajectory.getStates()));
+        }
+      }
+    } catch (Exception e) {
+      Logger.error("Could not preload auto " + autoName + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Runs the controller, kinematics and pose estimator code used while following a path on a
+   * trajectory, with a private copy of each so nothing on the robot is touched
+   */
+  private static void exerciseFollower(List<PathPlannerTrajectoryState> states) {
+    PPHolonomicDriveController controller = new PPHolonomicDriveController(
+        Constants.DriveConstants.AUTO_TRANSLATION_PID, Constants.DriveConstants.AUTO_ROTATION_PID);
+    SwerveDriveKinematics kinematics = new SwerveDriveKinematics(
+        Constants.DriveConstants.FRONT_LEFT_LOCATION, Constants.DriveConstants.FRONT_RIGHT_LOCATION,
+        Constants.DriveConstants.BACK_LEFT_LOCATION, Constants.DriveConstants.BACK_RIGHT_LOCATION);
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = new SwerveModulePosition();
+    }
+    Pose2d startPose = states.get(0).pose;
+    SwerveDrivePoseEstimator estimator = new SwerveDrivePoseEstimator(
+        kinematics, startPose.getRotation(), positions, startPose,
+        PoseEstimator.stateStdDevs, PoseEstimator.visionMeasurementStdDevs);
+    controller.reset(startPose, new ChassisSpeeds());
+
+    double timestamp = 0;
+    for (PathPlannerTrajectoryState state : states) {
+      ChassisSpeeds speeds = controller.calculateRobotRelativeSpeeds(state.pose, state);
+      SwerveModuleState[] moduleStates = kinematics.toSwerveModuleStates(ChassisSpeeds.discretize(speeds, 0.02));
+      SwerveDriveKinematics.desaturateWheelSpeeds(moduleStates, Constants.DriveConstants.MAX_SPEED_IN_MPS);
+      timestamp += 0.02;
+      estimator.updateWithTime(timestamp, state.pose.getRotation(), positions);
+      estimator.addVisionMeasurement(state.pose, timestamp - 0.05);
+    }
+  }
+
+  /**
+   * Call every loop while disabled, preloads the selected auto
+   */
+  public void disabledPeriodic() {
+    autoChooser.disabledPeriodic(DriveSubsystem.shouldFlipPath());
   }
 
   private void configureBindings() {
@@ -183,7 +340,15 @@ public class RobotContainer {
         .and(new JoystickButton(secondaryXboxController, XboxController.Button.kStart.value))
         .onTrue(new EmergencyStopCommand(driveSubsystem, elevatorSubsystem, shooterSubsystem));
 
-    // Slow driving mode for primary controller
+    // Go score: drive to the reef target with the lowest estimated time to score, raising the elevator
+    // on the approach, shooting and lowering it again (hold the left stick press). The level buttons
+    // and the right bumper stay as the manual fallback
+    new JoystickButton(xboxController, XboxController.Button.kLeftStick.value)
+        .whileTrue(new ScoreCoralCommand(driveSubsystem, limelightSubsystem, elevatorSubsystem, shooterSubsystem, reefTargetSelector));
+    new JoystickButton(secondaryXboxController, XboxController.Button.kLeftStick.value)
+        .whileTrue(new ScoreCoralCommand(driveSubsystem, limelightSubsystem, elevatorSubsystem, shooterSubsystem, reefTargetSelector));
+
+    // Slow driving mode for lining up by hand, the elevator height limits still apply on top (primary controller)
     new JoystickButton(xboxController, XboxController.Button.kRightStick.value)
         .whileTrue(
             new DefaultDriveCommand(
@@ -206,12 +371,29 @@ public class RobotContainer {
         );
   }
 
+  /**
+   * Dashboard buttons for the SysId characterization tests. The logs they write are fit by
+   * ./gradlew sysIdAnalyzer, which updates the feedforward gains in Configs
+   */
+  private void configureSysIdCommands() {
+    for (SysIdRoutine.Direction direction : SysIdRoutine.Direction.values()) {
+      String name = direction == SysIdRoutine.Direction.kForward ? "forward" : "reverse";
+      SmartDashboard.putData("SysId/Elevator quasistatic " + name, elevatorSubsystem.sysIdQuasistatic(direction));
+      SmartDashboard.putData("SysId/Elevator dynamic " + name, elevatorSubsystem.sysIdDynamic(direction));
+      SmartDashboard.putData("SysId/Drive quasistatic " + name, driveSubsystem.sysIdDriveQuasistatic(direction));
+      SmartDashboard.putData("SysId/Drive dynamic " + name, driveSubsystem.sysIdDriveDynamic(direction));
+      SmartDashboard.putData("SysId/Steer quasistatic " + name, driveSubsystem.sysIdSteerQuasistatic(direction));
+      SmartDashboard.putData("SysId/Steer dynamic " + name, driveSubsystem.sysIdSteerDynamic(direction));
+    }
+  }
+
   private void configureDefaultCommands() {
     driveSubsystem.setDefaultCommand(
         new DefaultDriveCommand(
             driveSubsystem,
-            () -> getForwardInput() * 0.5,  // Forward/backward
-            () -> getStrafeInput() * 0.5,   // Left/right
+            // full speed, the drive limits it by the elevator height
+            () -> getForwardInput(),  // Forward/backward
+            () -> getStrafeInput(),   // Left/right
             () -> getRotationInput() * 0.5  // Rotation
         )
     );
@@ -226,7 +408,7 @@ public class RobotContainer {
    * @return the command to run in autonomous
    */
   public Command getAutonomousCommand() {
-    // Create and return the autonomous command
+    // Create and return the autonomous command, already built while disabled
     return autoChooser.getSelected();
   }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package frc.robot.commands;
+
+import com.pathplanner.lib.auto.NamedCommands;
+
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.util.CompiledTrajectoryFile;
+
+/**
+ * Runs an auto compiled at build time: its paths are followed from the compiled trajectories, its
+ * named commands and waits run in between, the same as the PathPlanner auto.
+ */
+public class CompiledAutoCommand extends SequentialCommandGroup {
+    public CompiledAutoCommand(DriveSubsystem drive, CompiledTrajectoryFile file, CompiledTrajectoryFile.Auto auto) {
+        setName(auto.name);
+        if (auto.resetOdom) {
+            String firstPath = auto.steps.stream()
+                .filter(step -> step.type == CompiledTrajectoryFile.STEP_PATH)
+                .map(step -> step.name)
+                .findFirst()
+                .orElse(null);
+            if (firstPath != null) {
+                // the alliance is read when the auto starts, not when it is built
+                addCommands(Commands.runOnce(() -> drive.resetOdometry(
+                    file.getTrajectory(firstPath, DriveSubsystem.shouldFlipPath()).getInitialPose())));
+            }
+        }
+        for (CompiledTrajectoryFile.Step step : auto.steps) {
+            switch (step.type) {
+                case CompiledTrajectoryFile.STEP_PATH:
+                    addCommands(new FollowCompiledTrajectoryCommand(drive, file, step.name));
+                    break;
+                case CompiledTrajectoryFile.STEP_NAMED:
+                    addCommands(NamedCommands.getCommand(step.name));
+                    break;
+                case CompiledTrajectoryFile.STEP_WAIT:
+                    addCommands(Commands.waitSeconds(step.waitSeconds));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.function.DoubleSupplier;
 
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.util.LatencyTracer;
 
 /**
  * Default command for the drive subsystem that implements swerve drive control.
@@ -17,6 +18,11 @@ public class DefaultDriveCommand extends Command {
     private final DoubleSupplier ySpeedSupplier;
     private final DoubleSupplier rotationSupplier;
 
+    // Last inputs, used to stamp changed inputs for latency tracing
+    private double lastXSpeed = 0;
+    private double lastYSpeed = 0;
+    private double lastRotation = 0;
+
     /**
      * Creates a new DefaultDriveCommand.
      *
@@ -44,10 +50,20 @@ public class DefaultDriveCommand extends Command {
 
     @Override
     public void execute() {
-        driveSubsystem.drive(
-            xSpeedSupplier.getAsDouble(),
-            ySpeedSupplier.getAsDouble(),
-            rotationSupplier.getAsDouble());
+        double xSpeed = xSpeedSupplier.getAsDouble();
+        double ySpeed = ySpeedSupplier.getAsDouble();
+        double rotation = rotationSupplier.getAsDouble();
+
+        // A changed input is a new driver sample, stamp it with the time its data arrived
+        boolean inputChanged = Math.abs(xSpeed - lastXSpeed) > 1E-3
+            || Math.abs(ySpeed - lastYSpeed) > 1E-3
+            || Math.abs(rotation - lastRotation) > 1E-3;
+        double inputTimestamp = inputChanged ? LatencyTracer.getLoopStartSeconds() : Double.NaN;
+        lastXSpeed = xSpeed;
+        lastYSpeed = ySpeed;
+        lastRotation = rotation;
+
+        driveSubsystem.drive(xSpeed, ySpeed, rotation, inputTimestamp);
     }
 
     @Override
@@ -0,0 +1,132 @@
+package frc.robot.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.pathplanner.lib.auto.NamedCommands;
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.util.CompiledTrajectoryFile;
+import frc.robot.util.Logger;
+
+/**
+ * Follows a trajectory compiled at build time by sampling it from the memory-mapped file, with the
+ * same holonomic controller the PathPlanner commands use.
+ * Event markers run their named command alongside the path, the same way PathPlanner runs them:
+ * point markers run until they finish, zones are cancelled when the robot leaves the zone. Their
+ * requirements are added to this command, so nothing else can use those subsystems while the path runs.
+ */
+public class FollowCompiledTrajectoryCommand extends Command {
+    private final DriveSubsystem m_drive;
+    private final CompiledTrajectoryFile m_file;
+    private final String m_pathName;
+    private final PPHolonomicDriveController m_controller = new PPHolonomicDriveController(
+        DriveConstants.AUTO_TRANSLATION_PID,
+        DriveConstants.AUTO_ROTATION_PID);
+    private final Timer m_timer = new Timer();
+
+    private CompiledTrajectoryFile.Trajectory m_trajectory;
+    private final List<CompiledTrajectoryFile.Marker> m_pendingMarkers = new ArrayList<>();
+    private final List<Command> m_markerCommands = new ArrayList<>();
+    private final List<Double> m_markerEndTimes = new ArrayList<>();
+
+    public FollowCompiledTrajectoryCommand(DriveSubsystem drive, CompiledTrajectoryFile file, String pathName) {
+        m_drive = drive;
+        m_file = file;
+        m_pathName = pathName;
+        addRequirements(drive);
+        // the markers are the same for both alliances
+        for (CompiledTrajectoryFile.Marker marker : file.getTrajectory(pathName, false).getMarkers()) {
+            if (!NamedCommands.hasCommand(marker.name)) {
+                continue;
+            }
+            Set<Subsystem> requirements = NamedCommands.getCommand(marker.name).getRequirements();
+            if (requirements.contains(drive)) {
+                throw new IllegalArgumentException("Event marker " + marker.name + " on " + pathName
+                    + " cannot require the drive subsystem while the path is followed");
+            }
+            addRequirements(requirements.toArray(new Subsystem[0]));
+        }
+    }
+
+    @Override
+    public void initialize() {
+        m_trajectory = m_file.getTrajectory(m_pathName, DriveSubsystem.shouldFlipPath());
+        m_controller.reset(m_drive.getPose(), m_drive.getCurrentSpeeds());
+        m_pendingMarkers.clear();
+        m_pendingMarkers.addAll(m_trajectory.getMarkers());
+        m_markerCommands.clear();
+        m_markerEndTimes.clear();
+        m_timer.restart();
+        Logger.log("Following compiled trajectory " + m_pathName);
+    }
+
+    @Override
+    public void execute() {
+        double time = m_timer.get();
+        PathPlannerTrajectoryState target = m_trajectory.sample(time);
+        ChassisSpeeds speeds = m_controller.calculateRobotRelativeSpeeds(m_drive.getPose(), target);
+        m_drive.driveRobotRelative(speeds, target.feedforwards);
+
+        runMarkers(time);
+
+        SmartDashboard.putNumber("CompiledPath/Time", time);
+        SmartDashboard.putNumber("CompiledPath/Error (m)",
+            m_drive.getPose().getTranslation().getDistance(target.pose.getTranslation()));
+    }
+
+    private void runMarkers(double time) {
+        for (int i = m_pendingMarkers.size() - 1; i >= 0; i--) {
+            CompiledTrajectoryFile.Marker marker = m_pendingMarkers.get(i);
+            if (time >= marker.startSeconds) {
+                m_pendingMarkers.remove(i);
+                if (NamedCommands.hasCommand(marker.name)) {
+                    Command command = NamedCommands.getCommand(marker.name);
+                    command.initialize();
+                    m_markerCommands.add(command);
+                    m_markerEndTimes.add(marker.isZone() ? marker.endSeconds : Double.POSITIVE_INFINITY);
+                }
+            }
+        }
+        for (int i = m_markerCommands.size() - 1; i >= 0; i--) {
+            Command command = m_markerCommands.get(i);
+            boolean leftZone = time >= m_markerEndTimes.get(i);
+            if (!leftZone) {
+                command.execute();
+            }
+            if (leftZone || command.isFinished()) {
+                command.end(leftZone);
+                m_markerCommands.remove(i);
+                m_markerEndTimes.remove(i);
+            }
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return m_timer.hasElapsed(m_trajectory.getTotalTimeSeconds());
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        m_timer.stop();
+        for (Command command : m_markerCommands) {
+            command.end(true);
+        }
+        m_markerCommands.clear();
+        m_markerEndTimes.clear();
+        // keep moving into the next path if this one does not end at rest
+        if (interrupted || Math.abs(m_trajectory.getEndState().linearVelocity) < 0.1) {
+            m_drive.stop();
+        }
+    }
+}
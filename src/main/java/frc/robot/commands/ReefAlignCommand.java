@@ -0,0 +1,203 @@
+package frc.robot.commands;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.AlignConstants;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.LimelightSubsystem;
+import frc.robot.util.Logger;
+
+/**
+ * Final alignment to a reef branch.
+ * Instead of pathfinding, this closes the loop directly on the position of the branch's AprilTag
+ * relative to the robot, measured from the Limelight's tx and ty. Every new frame sets where the
+ * target is relative to the robot, and wheel odometry carries that forward until the next frame, so
+ * neither the fused pose nor the same frame twice is used. A frame is placed at the odometry pose from
+ * when it was captured, not the pose now, since the robot keeps moving during the camera latency. Until the tag is seen it drives to the
+ * target on the fused pose.
+ * It starts from whatever velocity the robot already has, so it can take over from path following
+ * without stopping, and finishes as soon as the robot is settled inside the tolerances.
+ */
+public class ReefAlignCommand extends Command {
+    // Longer than the camera latency
+    private static final double POSE_HISTORY_SECONDS = 1.0;
+    private static final AprilTagFieldLayout aprilTagField = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
+
+    private final DriveSubsystem driveSubsystem;
+    private final LimelightSubsystem limelight;
+    private final Pose2d targetPose;
+    private final int targetTagId;
+    // Where the tag is relative to the robot once it is at the target, in robot coordinates
+    private final Translation2d tagAtTarget;
+    private final Timer timer = new Timer();
+
+    // Odometry since the command started, only used to carry the target from frame to frame
+    private SwerveDriveOdometry odometry;
+    // Odometry poses by FPGA time, to look up where the robot was when a frame was captured
+    private final TimeInterpolatableBuffer<Pose2d> poseHistory = TimeInterpolatableBuffer.createBuffer(POSE_HISTORY_SECONDS);
+    private double startSeconds;
+    // Target pose in the odometry's coordinates, moved by every frame of the tag
+    private Pose2d trackedTarget;
+    private double lastFrameMillis = Double.NaN;
+
+    // Last commanded field relative velocity, used to limit acceleration
+    private Translation2d lastVelocity = new Translation2d();
+    private int settledCycles = 0;
+    private boolean usingVision = false;
+
+    /**
+     * @param driveSubsystem The drive subsystem
+     * @param limelight The limelight looking at the reef
+     * @param targetPose Field relative pose to align to
+     */
+    public ReefAlignCommand(DriveSubsystem driveSubsystem, LimelightSubsystem limelight, Pose2d targetPose) {
+        this.driveSubsystem = driveSubsystem;
+        this.limelight = limelight;
+        this.targetPose = targetPose;
+        this.targetTagId = getNearestTagId(targetPose);
+        Pose3d tag = aprilTagField.getTagPose(targetTagId).orElseThrow();
+        this.tagAtTarget = tag.toPose2d().getTranslation().minus(targetPose.getTranslation())
+            .rotateBy(targetPose.getRotation().unaryMinus());
+        addRequirements(driveSubsystem);
+    }
+
+    private static int getNearestTagId(Pose2d pose) {
+        int nearestId = -1;
+        double minDistance = Double.MAX_VALUE;
+        for (AprilTag tag : aprilTagField.getTags()) {
+            double distance = tag.pose.toPose2d().getTranslation().getDistance(pose.getTranslation());
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearestId = tag.ID;
+            }
+        }
+        return nearestId;
+    }
+
+    @Override
+    public void initialize() {
+        Logger.log("Aligning to " + targetPose + " using tag " + targetTagId);
+        timer.restart();
+        settledCycles = 0;
+        usingVision = false;
+
+        // starts where the fused pose is, so the target is in the same place until the tag is seen
+        odometry = new SwerveDriveOdometry(driveSubsystem.getDriveKinematics(),
+            driveSubsystem.getGyroRotation(), driveSubsystem.getModulePositions(), driveSubsystem.getPose());
+        trackedTarget = targetPose;
+        lastFrameMillis = Double.NaN;
+        poseHistory.clear();
+        startSeconds = Timer.getFPGATimestamp();
+        poseHistory.addSample(startSeconds, odometry.getPoseMeters());
+
+        // Start from the current velocity so the handoff from path following is seamless
+        ChassisSpeeds fieldSpeeds = ChassisSpeeds.fromRobotRelativeSpeeds(
+            driveSubsystem.getCurrentSpeeds(), driveSubsystem.getPose().getRotation());
+        lastVelocity = new Translation2d(fieldSpeeds.vxMetersPerSecond, fieldSpeeds.vyMetersPerSecond);
+    }
+
+    /**
+     * Moves the tracked target to where a new frame of the target tag puts it. The tag position
+     * relative to the robot is measured, and the robot is at the target when the tag is where it would
+     * be seen from the target. Frames captured before the command started are skipped, the robot
+     * pose they were seen from is not known.
+     */
+    private void updateTrackedTarget() {
+        double frameMillis = limelight.getTimeRecordedInMilis();
+        if (frameMillis == lastFrameMillis || limelight.getTargetID() != targetTagId) {
+            return;
+        }
+        double frameSeconds = frameMillis / 1000.0;
+        Translation2d tagInRobot = limelight.getTagTranslation();
+        if (tagInRobot == null || frameSeconds < startSeconds) {
+            return;
+        }
+        Pose2d framePose = poseHistory.getSample(frameSeconds).orElse(null);
+        if (framePose == null) {
+            return;
+        }
+        lastFrameMillis = frameMillis;
+        usingVision = true;
+        // the heading is not measured from the tag, the target heading relative to the robot comes from the gyro
+        Rotation2d headingError = targetPose.getRotation().minus(framePose.getRotation());
+        Translation2d targetInRobot = tagInRobot.minus(tagAtTarget.rotateBy(headingError));
+        trackedTarget = new Pose2d(
+            framePose.getTranslation().plus(targetInRobot.rotateBy(framePose.getRotation())),
+            targetPose.getRotation());
+    }
+
+    @Override
+    public void execute() {
+        Pose2d currentPose = odometry.update(driveSubsystem.getGyroRotation(), driveSubsystem.getModulePositions());
+        poseHistory.addSample(Timer.getFPGATimestamp(), currentPose);
+        updateTrackedTarget();
+        Translation2d error = trackedTarget.getTranslation().minus(currentPose.getTranslation());
+        double distance = error.getNorm();
+        double angleError = trackedTarget.getRotation().minus(currentPose.getRotation()).getRadians();
+
+        // Proportional speed, capped so the robot can still stop in the remaining distance
+        double stoppingSpeed = Math.sqrt(2 * AlignConstants.MAX_ACCELERATION_MPSS * distance);
+        double speed = Math.min(AlignConstants.TRANSLATION_KP * distance,
+            Math.min(AlignConstants.MAX_SPEED_MPS, stoppingSpeed));
+        Translation2d velocity = distance > 1e-6 ? error.times(speed / distance) : new Translation2d();
+
+        // Limit the change in velocity to the acceleration limit
+        Translation2d deltaVelocity = velocity.minus(lastVelocity);
+        double maxDelta = AlignConstants.MAX_ACCELERATION_MPSS * TimedRobot.kDefaultPeriod;
+        if (deltaVelocity.getNorm() > maxDelta) {
+            velocity = lastVelocity.plus(deltaVelocity.times(maxDelta / deltaVelocity.getNorm()));
+        }
+        lastVelocity = velocity;
+
+        double omega = MathUtil.clamp(AlignConstants.ROTATION_KP * angleError,
+            -AlignConstants.MAX_ANGULAR_SPEED_RPS, AlignConstants.MAX_ANGULAR_SPEED_RPS);
+
+        driveSubsystem.driveRobotRelative(ChassisSpeeds.fromFieldRelativeSpeeds(
+            velocity.getX(), velocity.getY(), omega, currentPose.getRotation()));
+
+        // the measured speed, the commanded speed is always small this close to the target
+        ChassisSpeeds measuredSpeeds = driveSubsystem.getCurrentSpeeds();
+        double measuredSpeed = Math.hypot(measuredSpeeds.vxMetersPerSecond, measuredSpeeds.vyMetersPerSecond);
+        boolean settled = distance < AlignConstants.POSITION_TOLERANCE_METERS
+            && Math.abs(angleError) < AlignConstants.ANGLE_TOLERANCE_RADIANS
+            && measuredSpeed < AlignConstants.SPEED_TOLERANCE_MPS;
+        settledCycles = settled ? settledCycles + 1 : 0;
+
+        SmartDashboard.putNumber("Align/Distance Error", distance);
+        SmartDashboard.putNumber("Align/Angle Error (deg)", Math.toDegrees(angleError));
+        SmartDashboard.putBoolean("Align/Using Vision", usingVision);
+    }
+
+    /**
+     * @return whether the robot has been inside the alignment tolerances long enough
+     */
+    public boolean isAligned() {
+        return settledCycles >= AlignConstants.SETTLE_CYCLES;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return isAligned() || timer.hasElapsed(AlignConstants.TIMEOUT_SECONDS);
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        driveSubsystem.stop();
+        SmartDashboard.putNumber("Align/Time (s)", timer.get());
+        Logger.log("Alignment " + (isAligned() ? "finished" : "stopped") + " after " + timer.get()
+            + " s, interrupted: " + interrupted);
+    }
+}
@@ -0,0 +1,163 @@
+package frc.robot.commands;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.PathfinderConstants;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.util.Logger;
+
+/**
+ * Follows a path from the grid pathfinder to one of its goals, and replans when the robot falls too
+ * far off the path, for example after being bumped.
+ * The tracking error is measured between the estimated pose and the setpoint the path follower is
+ * chasing. When it stays above the thresholds for the debounce time, a new path to the same goal is
+ * planned on a background thread from the current pose and speed. The old path is followed until
+ * the new one is ready, then the new one takes over in the same cycle without stopping. A plan
+ * that takes longer than the timeout is dropped and the old path is kept.
+ */
+public class ReplanningDriveCommand extends Command {
+    private static final ExecutorService planner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Replanner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static int totalReplans = 0;
+
+    private final DriveSubsystem drive;
+    private final Pose2d goal;
+    private final PathPlannerPath initialPath;
+
+    private Command pathCommand;
+    private CompletableFuture<Optional<PathPlannerPath>> replan;
+    private long replanStartNanos;
+    private volatile long replanPlanNanos;
+    private final Debouncer errorDebouncer = new Debouncer(PathfinderConstants.REPLAN_DEBOUNCE_SECONDS);
+    private final Timer sinceReplanTimer = new Timer();
+    private int replanCount;
+
+    /**
+     * @param drive The drive subsystem
+     * @param goal Goal pose, one of the grid pathfinder's goals
+     * @param path Path to the goal planned from the current pose
+     */
+    public ReplanningDriveCommand(DriveSubsystem drive, Pose2d goal, PathPlannerPath path) {
+        this.drive = drive;
+        this.goal = goal;
+        this.initialPath = path;
+        addRequirements(drive);
+    }
+
+    @Override
+    public void initialize() {
+        pathCommand = AutoBuilder.followPath(initialPath);
+        pathCommand.initialize();
+        replan = null;
+        replanCount = 0;
+        errorDebouncer.calculate(false);
+        sinceReplanTimer.restart();
+    }
+
+    @Override
+    public void execute() {
+        if (replan != null) {
+            finishReplan();
+        }
+        pathCommand.execute();
+
+        Pose2d target = drive.getPathTargetPose();
+        if (target == null) {
+            return;
+        }
+        Pose2d pose = drive.getPose();
+        double error = pose.getTranslation().getDistance(target.getTranslation());
+        double headingError = Math.abs(pose.getRotation().minus(target.getRotation()).getRadians());
+        boolean offPath = errorDebouncer.calculate(error > PathfinderConstants.REPLAN_ERROR_METERS
+            || headingError > PathfinderConstants.REPLAN_HEADING_ERROR_RADIANS);
+        SmartDashboard.putNumber("Replan/Tracking error (m)", error);
+
+        if (offPath && replan == null && sinceReplanTimer.hasElapsed(PathfinderConstants.REPLAN_COOLDOWN_SECONDS)) {
+            startReplan(pose, error);
+        }
+    }
+
+    private void startReplan(Pose2d start, double error) {
+        ChassisSpeeds speeds = drive.getCurrentSpeeds();
+        double startSpeed = Math.hypot(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond);
+        PathConstraints constraints = drive.getPathConstraints();
+        Logger.logf("Off path by %.2f m, replanning to %s", error, goal);
+        replanStartNanos = System.nanoTime();
+        replan = CompletableFuture.supplyAsync(() -> {
+            long startNanos = System.nanoTime();
+            Optional<PathPlannerPath> path = drive.getPathfinder().flatMap(pathfinder ->
+                pathfinder.plan(start, startSpeed, goal, constraints));
+            replanPlanNanos = System.nanoTime() - startNanos;
+            return path;
+        }, planner);
+    }
+
+    /**
+     * Switches to the new path once it is planned, or drops the plan when it takes too long
+     */
+    private void finishReplan() {
+        double latencyMillis = (System.nanoTime() - replanStartNanos) / 1e6;
+        if (!replan.isDone()) {
+            if (latencyMillis > PathfinderConstants.REPLAN_TIMEOUT_SECONDS * 1000) {
+                Logger.logf("Replan took longer than %.0f ms, keeping the old path", PathfinderConstants.REPLAN_TIMEOUT_SECONDS * 1000);
+                replan.cancel(false);
+                replan = null;
+                sinceReplanTimer.restart();
+            }
+            return;
+        }
+        Optional<PathPlannerPath> path = replan.join();
+        replan = null;
+        sinceReplanTimer.restart();
+        if (path.isEmpty()) {
+            Logger.log("Replan found no path, keeping the old path");
+            return;
+        }
+
+        // ending as interrupted keeps the modules running into the new path
+        pathCommand.end(true);
+        pathCommand = AutoBuilder.followPath(path.get());
+        pathCommand.initialize();
+        errorDebouncer.calculate(false);
+
+        replanCount++;
+        totalReplans++;
+        Logger.logf("Replan %d: planned in %.2f ms, switched after %.1f ms", replanCount, replanPlanNanos / 1e6, latencyMillis);
+        SmartDashboard.putNumber("Replan/Count", totalReplans);
+        SmartDashboard.putNumber("Replan/Plan time (ms)", replanPlanNanos / 1e6);
+        SmartDashboard.putNumber("Replan/Latency (ms)", latencyMillis);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return pathCommand.isFinished();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        pathCommand.end(interrupted);
+        if (replan != null) {
+            replan.cancel(false);
+            replan = null;
+        }
+        if (replanCount > 0) {
+            Logger.logf("Reached %s after %d replans", goal, replanCount);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package frc.robot.commands;
+
+import com.pathplanner.lib.path.PathConstraints;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.AlignConstants;
+import frc.robot.Constants.ScoreConstants;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.ElevatorSubsystem;
+import frc.robot.subsystems.LimelightSubsystem;
+import frc.robot.subsystems.ReefTargetSelector;
+import frc.robot.subsystems.ShooterSubsystem;
+import frc.robot.subsystems.ShooterSubsystem.ShooterState;
+import frc.robot.util.Logger;
+
+/**
+ * Scores the coral at the reef target with the lowest estimated time to score, overlapping the
+ * drive, the elevator and the shot instead of running them one after the other.
+ * The elevator starts raising on the approach once the remaining drive time is no longer than its
+ * travel, the shot is fired as soon as the robot is aligned and the elevator is at the height or
+ * predicted to arrive before the coral reaches the wheels, and the elevator goes back down the
+ * moment the coral is out. The timing of every cycle is reported under "Score/".
+ */
+public class ScoreCoralCommand extends Command {
+    private enum Phase {
+        DRIVING,
+        SHOOTING,
+        DONE
+    }
+
+    private final DriveSubsystem drive;
+    private final LimelightSubsystem limelight;
+    private final ElevatorSubsystem elevator;
+    private final ShooterSubsystem shooter;
+    private final ReefTargetSelector targetSelector;
+    // level to score at, or -1 for whichever level is fastest
+    private final int level;
+
+    private final Timer cycleTimer = new Timer();
+    private ReefTargetSelector.Target target;
+    private Pose2d endPose;
+    // pathfinding to the branch followed by the vision servo, built when the command starts
+    private Command driveCommand;
+    private ReefAlignCommand alignCommand;
+    private boolean driveFinished;
+    private boolean elevatorRaised;
+    private Phase phase;
+
+    // cycle times, NaN until reached
+    private double raiseSeconds;
+    private double alignedSeconds;
+    private double fireSeconds;
+
+    // over all cycles since the robot started
+    private static int cycleCount = 0;
+    private static double totalCycleSeconds = 0;
+
+    /**
+     * Scores at the branch and level with the lowest estimated time to score
+     */
+    public ScoreCoralCommand(DriveSubsystem drive, LimelightSubsystem limelight, ElevatorSubsystem elevator,
+            ShooterSubsystem shooter, ReefTargetSelector targetSelector) {
+        this(drive, limelight, elevator, shooter, targetSelector, -1);
+    }
+
+    /**
+     * Scores at the branch with the lowest estimated time to score at a level
+     */
+    public ScoreCoralCommand(DriveSubsystem drive, LimelightSubsystem limelight, ElevatorSubsystem elevator,
+            ShooterSubsystem shooter, ReefTargetSelector targetSelector, int level) {
+        this.drive = drive;
+        this.limelight = limelight;
+        this.elevator = elevator;
+        this.shooter = shooter;
+        this.targetSelector = targetSelector;
+        this.level = level;
+        addRequirements(drive, elevator, shooter);
+    }
+
+    @Override
+    public void initialize() {
+        target = level < 0 ? targetSelector.getBestTarget() : targetSelector.getBestTarget(level);
+        endPose = target.getPose();
+        Logger.log("Scoring at " + target);
+
+        alignCommand = new ReefAlignCommand(drive, limelight, endPose);
+        driveCommand = drive.driveToEndPose(endPose)
+            .until(() -> getDistance() < AlignConstants.HANDOFF_DISTANCE_METERS)
+            .andThen(alignCommand);
+        driveCommand.initialize();
+        driveFinished = false;
+
+        // without a coral there is nothing to raise or shoot, the robot only drives to the branch
+        elevatorRaised = false;
+        phase = shooter.getState() == ShooterState.CORAL_INSIDE ? Phase.DRIVING : Phase.DONE;
+        if (phase == Phase.DONE) {
+            Logger.log("No coral inside the shooter, only driving to the branch");
+        }
+        raiseSeconds = Double.NaN;
+        alignedSeconds = Double.NaN;
+        fireSeconds = Double.NaN;
+        cycleTimer.restart();
+    }
+
+    @Override
+    public void execute() {
+        if (!driveFinished) {
+            driveCommand.execute();
+            if (driveCommand.isFinished()) {
+                driveCommand.end(false);
+                driveFinished = true;
+            }
+        }
+
+        switch (phase) {
+            case DRIVING:
+                double travelSeconds = ElevatorSubsystem.estimateTravelSeconds(
+                    elevator.getCurrentPosition(), ElevatorSubsystem.getLevelHeight(target.level));
+                if (!elevatorRaised && estimateDriveSeconds() <= travelSeconds + ScoreConstants.RAISE_MARGIN_SECONDS) {
+                    Logger.logf("Raising the elevator to level %d, %.2f m from the branch", target.level, getDistance());
+                    elevator.goToLevel(target.level);
+                    elevatorRaised = true;
+                    raiseSeconds = cycleTimer.get();
+                }
+                if (alignCommand.isAligned() && Double.isNaN(alignedSeconds)) {
+                    alignedSeconds = cycleTimer.get();
+                }
+                // the prediction lets the shot start while the carriage is still finishing its move
+                boolean elevatorReady = elevatorRaised
+                    && (elevator.atTargetPosition() || elevator.predictArrivalSeconds() <= ScoreConstants.SHOT_LEAD_SECONDS);
+                if (alignCommand.isAligned() && elevatorReady) {
+                    Logger.logf("Firing with the elevator %.2f s from arriving", elevator.predictArrivalSeconds());
+                    if (target.level == 0) {
+                        shooter.shootBottomLevelCoral();
+                    } else {
+                        shooter.shootCoral();
+                    }
+                    fireSeconds = cycleTimer.get();
+                    phase = Phase.SHOOTING;
+                }
+                break;
+
+            case SHOOTING:
+                if (shooter.isCoralOut()) {
+                    elevator.goToLevel(0);
+                    reportCycle(cycleTimer.get());
+                    phase = Phase.DONE;
+                }
+                break;
+
+            case DONE:
+                break;
+        }
+    }
+
+    /**
+     * Estimates the time left to the branch, at path speed up to the handoff and at the alignment
+     * speed after it
+     */
+    private double estimateDriveSeconds() {
+        double distance = getDistance();
+        double alignDistance = Math.min(distance, AlignConstants.HANDOFF_DISTANCE_METERS);
+        PathConstraints constraints = drive.getPathConstraints();
+        return (distance - alignDistance) / constraints.maxVelocityMPS() + alignDistance / AlignConstants.MAX_SPEED_MPS;
+    }
+
+    private double getDistance() {
+        return drive.getPose().getTranslation().getDistance(endPose.getTranslation());
+    }
+
+    private void reportCycle(double exitSeconds) {
+        double driveSeconds = alignedSeconds;
+        // how long the aligned robot waited for the elevator, 0 when the elevator was there first
+        double elevatorWaitSeconds = fireSeconds - alignedSeconds;
+        double shotSeconds = exitSeconds - fireSeconds;
+        cycleCount++;
+        totalCycleSeconds += exitSeconds;
+        Logger.logf("Scored at level %d in %.2f s: drive %.2f s, elevator raised at %.2f s and waited for %.2f s, shot %.2f s",
+            target.level, exitSeconds, driveSeconds, raiseSeconds, elevatorWaitSeconds, shotSeconds);
+        SmartDashboard.putNumber("Score/Cycle time (s)", exitSeconds);
+        SmartDashboard.putNumber("Score/Drive time (s)", driveSeconds);
+        SmartDashboard.putNumber("Score/Elevator raise time (s)", raiseSeconds);
+        SmartDashboard.putNumber("Score/Elevator wait (s)", elevatorWaitSeconds);
+        SmartDashboard.putNumber("Score/Shot time (s)", shotSeconds);
+        SmartDashboard.putNumber("Score/Cycles", cycleCount);
+        SmartDashboard.putNumber("Score/Average cycle time (s)", totalCycleSeconds / cycleCount);
+    }
+
+    @Override
+    public boolean isFinished() {
+        if (phase == Phase.DONE) {
+            return driveFinished;
+        }
+        // the alignment gave up, the driver takes over with the elevator where it is
+        return phase == Phase.DRIVING && driveFinished && !alignCommand.isAligned();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        if (!driveFinished) {
+            driveCommand.end(true);
+        }
+        drive.stop();
+        if (phase == Phase.SHOOTING) {
+            Logger.log("Score interrupted during the shot");
+            shooter.emergencyStop();
+        } else if (phase == Phase.DRIVING) {
+            Logger.logf("Score %s before the shot after %.2f s", interrupted ? "interrupted" : "not aligned", cycleTimer.get());
+        }
+        cycleTimer.stop();
+    }
+}
@@ -29,9 +29,9 @@ public class ShootCommand extends SequentialCommandGroup {
     }
     
     /**
-     * Inner command that handles just the shooting part
+     * Inner command that handles just the shooting part, leaving the elevator where it is
      */
-    private static class ShootCoralCommand extends Command {
+    public static class ShootCoralCommand extends Command {
         private final ShooterSubsystem shooter;
         private final ElevatorSubsystem elevator;
 
@@ -47,8 +47,9 @@ public class ShootCommand extends SequentialCommandGroup {
             // have to create a elevator level for very bottom in order for this to run
             if (elevator.getCurrentLevel() == 0) {
                 shooter.shootBottomLevelCoral();
-            } 
-            shooter.shootCoral();
+            } else {
+                shooter.shootCoral();
+            }
         }
 
         @Override
@@ -69,7 +70,7 @@ public class ShootCommand extends SequentialCommandGroup {
 
         @Override
         public boolean isFinished() {
-            // Command is finished when the shooter returns to NO_CORAL state
+            // Command is finished when the shooter returns to NO_CORAL state, as soon as the coral is out
             return shooter.getState() == ShooterSubsystem.ShooterState.NO_CORAL;
         }
     }
@@ -0,0 +1,182 @@
+package frc.robot.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.util.Logger;
+
+/**
+ * Drives through a list of stops, one leg per stop.
+ * While a leg is driven the next leg is already planned on a background thread, starting from the
+ * stop the current leg ends at, so the next leg starts in the cycle the current one finishes.
+ * With a blend speed the legs are joined without stopping: every leg ends with the speed the next
+ * one starts with, scaled down by how sharply the tour turns at the stop.
+ *
+ * Stops that the grid pathfinder has no precomputed map for are driven with
+ * {@link DriveSubsystem#driveToEndPose(Pose2d)} instead, planned when the leg starts.
+ */
+public class WaypointTourCommand extends Command {
+    private static final ExecutorService planner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TourPlanner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DriveSubsystem drive;
+    private final List<Pose2d> stops = new ArrayList<>();
+    private final double blendSpeedMetersPerSecond;
+
+    private int legIndex;
+    private Command legCommand;
+    private CompletableFuture<Optional<PathPlannerPath>> nextLegPath;
+    private volatile long nextLegPlanNanos;
+    private final Timer legTimer = new Timer();
+    private final Timer tourTimer = new Timer();
+    private double waitingSinceSeconds;
+
+    /**
+     * @param drive The drive subsystem
+     * @param stops Poses to drive to, in order
+     * @param blendSpeedMetersPerSecond Speed to pass through the stops at, 0 to stop at every stop
+     */
+    public WaypointTourCommand(DriveSubsystem drive, List<Pose2d> stops, double blendSpeedMetersPerSecond) {
+        this.drive = drive;
+        this.stops.addAll(stops);
+        this.blendSpeedMetersPerSecond = blendSpeedMetersPerSecond;
+        addRequirements(drive);
+    }
+
+    /**
+     * Adds a stop at the end of the tour. The leg before it only blends into it if the stop is
+     * added before that leg is planned.
+     */
+    public void addStop(Pose2d stop) {
+        stops.add(stop);
+    }
+
+    @Override
+    public void initialize() {
+        Logger.log("Starting tour of " + stops.size() + " stops");
+        legIndex = -1;
+        legCommand = null;
+        nextLegPath = stops.isEmpty() ? null : planLeg(0, drive.getPose(), currentSpeed());
+        waitingSinceSeconds = Timer.getFPGATimestamp();
+        tourTimer.restart();
+    }
+
+    @Override
+    public void execute() {
+        if (legCommand != null) {
+            legCommand.execute();
+            if (!legCommand.isFinished()) {
+                return;
+            }
+            legCommand.end(false);
+            legCommand = null;
+            Logger.logf("Tour leg %d done in %.2f s", legIndex, legTimer.get());
+            SmartDashboard.putNumber("Tour/Leg execution time (s)", legTimer.get());
+            waitingSinceSeconds = Timer.getFPGATimestamp();
+        }
+        if (legIndex + 1 < stops.size()) {
+            startNextLeg();
+        }
+    }
+
+    private void startNextLeg() {
+        // with pipelining the plan is normally done already, if not wait for it without blocking the loop
+        if (nextLegPath != null && !nextLegPath.isDone()) {
+            return;
+        }
+        legIndex++;
+        Optional<PathPlannerPath> path = nextLegPath == null ? Optional.empty() : nextLegPath.join();
+        double planMillis = nextLegPlanNanos / 1e6;
+        double waitMillis = (Timer.getFPGATimestamp() - waitingSinceSeconds) * 1000;
+
+        legCommand = path.isPresent()
+            ? AutoBuilder.followPath(path.get())
+            : drive.driveToEndPose(stops.get(legIndex));
+        legCommand.initialize();
+        legTimer.restart();
+
+        Logger.logf("Tour leg %d to %s: planned in %.2f ms, waited %.1f ms", legIndex, stops.get(legIndex), planMillis, waitMillis);
+        SmartDashboard.putNumber("Tour/Leg", legIndex);
+        SmartDashboard.putNumber("Tour/Leg planning time (ms)", planMillis);
+        SmartDashboard.putNumber("Tour/Dead time between legs (ms)", waitMillis);
+
+        // plan the following leg while this one is driven, from the stop this leg ends at
+        if (legIndex + 1 < stops.size()) {
+            nextLegPath = planLeg(legIndex + 1, stops.get(legIndex), getBlendSpeed(legIndex));
+        } else {
+            nextLegPath = null;
+        }
+    }
+
+    private CompletableFuture<Optional<PathPlannerPath>> planLeg(int index, Pose2d start, double startSpeed) {
+        Pose2d goal = stops.get(index);
+        double endSpeed = getBlendSpeed(index);
+        PathConstraints constraints = drive.getPathConstraints();
+        return CompletableFuture.supplyAsync(() -> {
+            long startNanos = System.nanoTime();
+            Optional<PathPlannerPath> path = drive.getPathfinder().flatMap(pathfinder ->
+                pathfinder.plan(start, startSpeed, goal, endSpeed, constraints));
+            nextLegPlanNanos = System.nanoTime() - startNanos;
+            return path;
+        }, planner);
+    }
+
+    /**
+     * Speed to pass through a stop at, lower the sharper the turn from the leg into the stop to the
+     * leg out of it. Zero at the last stop or when the legs reverse.
+     */
+    private double getBlendSpeed(int stopIndex) {
+        if (blendSpeedMetersPerSecond <= 0 || stopIndex + 1 >= stops.size() || stopIndex == 0) {
+            return 0;
+        }
+        Translation2d in = stops.get(stopIndex).getTranslation().minus(stops.get(stopIndex - 1).getTranslation());
+        Translation2d out = stops.get(stopIndex + 1).getTranslation().minus(stops.get(stopIndex).getTranslation());
+        if (in.getNorm() < 1e-6 || out.getNorm() < 1e-6) {
+            return 0;
+        }
+        double cosTurn = (in.getX() * out.getX() + in.getY() * out.getY()) / (in.getNorm() * out.getNorm());
+        return blendSpeedMetersPerSecond * Math.max(0, cosTurn);
+    }
+
+    private double currentSpeed() {
+        var speeds = drive.getCurrentSpeeds();
+        return Math.hypot(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return legCommand == null && legIndex + 1 >= stops.size();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        if (legCommand != null) {
+            legCommand.end(interrupted);
+            legCommand = null;
+        }
+        if (nextLegPath != null) {
+            nextLegPath.cancel(false);
+            nextLegPath = null;
+        }
+        drive.stop();
+        Logger.logf("Tour %s after %.2f s", interrupted ? "interrupted" : "complete", tourTimer.get());
+        SmartDashboard.putNumber("Tour/Total time (s)", tourTimer.get());
+    }
+}
@@ -0,0 +1,117 @@
+package frc.robot.subsystems;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.revrobotics.ColorSensorV3;
+import com.revrobotics.ColorSensorV3.ColorSensorMeasurementRate;
+import com.revrobotics.ColorSensorV3.ColorSensorResolution;
+import com.revrobotics.ColorSensorV3.GainFactor;
+import com.revrobotics.ColorSensorV3.ProximitySensorMeasurementRate;
+import com.revrobotics.ColorSensorV3.ProximitySensorResolution;
+
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.util.Color;
+
+/**
+ * Reads the color sensor on its own thread, so the robot loop never waits on I2C, which can stall
+ * it for milliseconds on the onboard port. The proximity is read every period and the color at the
+ * rate the sensor measures it, the presence of a game piece is debounced, and the latest reading is
+ * published with the times of the last entry and exit edges for the robot loop to read without
+ * locking.
+ */
+public class ColorSensorSampler {
+    // the sensor measures the color this often, reading it faster only returns the same color
+    private static final double COLOR_PERIOD_SECONDS = 0.025;
+
+    /**
+     * One immutable sample of the sensor
+     */
+    public static final class Reading {
+        public final int proximity;
+        public final Color color;
+        // debounced presence of a game piece in front of the sensor
+        public final boolean present;
+        public final double timestampSeconds;
+        // FPGA time of the last debounced edges, 0 before the first one
+        public final double enteredTimestampSeconds;
+        public final double exitedTimestampSeconds;
+        // how long the I2C reads of this sample took
+        public final double readMillis;
+
+        Reading(int proximity, Color color, boolean present, double timestampSeconds,
+                double enteredTimestampSeconds, double exitedTimestampSeconds, double readMillis) {
+            this.proximity = proximity;
+            this.color = color;
+            this.present = present;
+            this.timestampSeconds = timestampSeconds;
+            this.enteredTimestampSeconds = enteredTimestampSeconds;
+            this.exitedTimestampSeconds = exitedTimestampSeconds;
+            this.readMillis = readMillis;
+        }
+    }
+
+    private final ColorSensorV3 sensor;
+    private final int proximityThreshold;
+    private final double periodSeconds;
+    private final Debouncer presenceDebouncer;
+    private final AtomicReference<Reading> latest =
+        new AtomicReference<>(new Reading(0, new Color(0, 0, 0), false, 0, 0, 0, 0));
+    private final Notifier notifier = new Notifier(this::sample);
+
+    // only touched by the sampling thread
+    private Color color = new Color(0, 0, 0);
+    private double lastColorTimestamp = 0;
+
+    /**
+     * Configures the sensor to measure as fast as the sampling needs
+     * @param proximityThreshold Proximity above which a game piece is in front of the sensor
+     * @param periodSeconds How often the proximity is read
+     * @param debounceSeconds How long the proximity has to stay across the threshold for an edge
+     */
+    public ColorSensorSampler(ColorSensorV3 sensor, int proximityThreshold, double periodSeconds, double debounceSeconds) {
+        this.sensor = sensor;
+        this.proximityThreshold = proximityThreshold;
+        this.periodSeconds = periodSeconds;
+        presenceDebouncer = new Debouncer(debounceSeconds, Debouncer.DebounceType.kBoth);
+
+        // the defaults measure the proximity every 100 ms, far too slow to catch a coral passing
+        sensor.configureProximitySensor(ProximitySensorResolution.kProxRes11bit, ProximitySensorMeasurementRate.kProxRate6ms);
+        sensor.configureColorSensor(ColorSensorResolution.kColorSensorRes16bit, ColorSensorMeasurementRate.kColorRate25ms,
+            GainFactor.kGain3x);
+        notifier.setName("ColorSensorSampler");
+    }
+
+    public void start() {
+        notifier.startPeriodic(periodSeconds);
+    }
+
+    /**
+     * @return the latest sample, without waiting on the sensor
+     */
+    public Reading getLatest() {
+        return latest.get();
+    }
+
+    private void sample() {
+        double startSeconds = Timer.getFPGATimestamp();
+        int proximity = sensor.getProximity();
+        if (startSeconds - lastColorTimestamp >= COLOR_PERIOD_SECONDS) {
+            color = sensor.getColor();
+            lastColorTimestamp = startSeconds;
+        }
+        double readMillis = (Timer.getFPGATimestamp() - startSeconds) * 1000;
+
+        Reading previous = latest.get();
+        boolean present = presenceDebouncer.calculate(proximity > proximityThreshold);
+        double entered = previous.enteredTimestampSeconds;
+        double exited = previous.exitedTimestampSeconds;
+        if (present && !previous.present) {
+            entered = startSeconds;
+        } else if (!present && previous.present) {
+            exited = startSeconds;
+        }
+        latest.set(new Reading(proximity, color, present, startSeconds, entered, exited, readMillis));
+    }
+}
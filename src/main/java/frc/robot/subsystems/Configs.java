@@ -6,8 +6,27 @@ import com.revrobotics.spark.config.SparkBaseConfig.IdleMode;
 
 import frc.robot.Constants;
 import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.NeoMotorConstants;
 
 public class Configs {
+    // Feedforward gains in volts, measured with the SysId routines and written here by
+    // ./gradlew sysIdAnalyzer -Plogs=/path/to/logs -Pwrite=true
+    public static final class Feedforward {
+        // Elevator, per encoder unit per second (squared)
+        public static final double ELEVATOR_KS = 0.2;
+        public static final double ELEVATOR_KG = 0.6;
+        public static final double ELEVATOR_KV = 12.0 / (NeoMotorConstants.FREE_SPEED_RPM / 60);
+        public static final double ELEVATOR_KA = 0.01;
+        // Swerve drive, per meter per second (squared)
+        public static final double DRIVE_KS = 0.0;
+        public static final double DRIVE_KV = 12.0 * ModuleConstants.DRIVE_VELOCITY_FEEDFOWARD;
+        public static final double DRIVE_KA = 0.0;
+        // Swerve steering, per radian per second (squared), for tuning the steering loop
+        public static final double STEER_KS = 0.0;
+        public static final double STEER_KV = 0.0;
+        public static final double STEER_KA = 0.0;
+    }
+
     public static final class SwerveModule {
         // Make these public so they can be accessed from SwerveModule.java
         public static final SparkMaxConfig drivingConfig = new SparkMaxConfig();
@@ -25,7 +44,7 @@ public class Configs {
             driveConfig.closedLoop
                 .feedbackSensor(FeedbackSensor.kPrimaryEncoder)
                 .pid(0.04, 0, 0)
-                .velocityFF(ModuleConstants.DRIVE_VELOCITY_FEEDFOWARD)
+                .velocityFF(Feedforward.DRIVE_KV / 12.0)
                 .outputRange(-1, 1);
         }
         public static void setTurningMotorSettings(SparkMaxConfig turnConfig) {
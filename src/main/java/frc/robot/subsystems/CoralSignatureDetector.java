@@ -0,0 +1,157 @@
+package frc.robot.subsystems;
+
+import com.revrobotics.spark.SparkMax;
+
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.ShooterConstants;
+
+/**
+ * Recognizes a coral entering and leaving the shooter from the transients of the shooter motors,
+ * sampled on its own thread every 5 ms. Once the wheels are at speed the detector learns their free
+ * spinning current and velocity, and a coral squeezed between the wheels then raises the current and
+ * slows them down. A shot starts with the coral already in the wheels, so it is armed as loaded and
+ * compared with the free spinning current learned on the last intake and the velocity setpoint. The
+ * thresholds are calibrated from logged intakes: every armed sample is logged with the color sensor's
+ * presence, which serves as the ground truth.
+ */
+public class CoralSignatureDetector {
+    // [current (A), velocity (RPM), mode ordinal, color sensor presence (1, 0, or -1 without sensor)]
+    public static final String LOG_ENTRY = "/shooter/signature";
+    private static final double PERIOD_SECONDS = 0.005;
+    // the wheels are at speed within this fraction of the setpoint
+    private static final double AT_SPEED_TOLERANCE = 0.1;
+    // free spinning samples needed before the baseline is trusted
+    private static final int BASELINE_SAMPLES = 10;
+    // weight of a new free spinning sample in the baseline
+    private static final double BASELINE_WEIGHT = 0.1;
+
+    public enum Mode {
+        IDLE,
+        INTAKE,
+        SHOOT
+    }
+
+    private final SparkMax leader;
+    private final SparkMax follower;
+    // null without a color sensor
+    private final ColorSensorSampler colorSensorSampler;
+    private final DoubleArrayLogEntry log = new DoubleArrayLogEntry(DataLogManager.getLog(), LOG_ENTRY);
+    private final Notifier notifier = new Notifier(this::sample);
+
+    // set by the robot loop
+    private volatile Mode mode = Mode.IDLE;
+    private volatile double setpoint = 0;
+    private volatile int armCount = 0;
+
+    // FPGA time the last entry and exit transients started, 0 before the first
+    private volatile double enteredTimestamp = 0;
+    private volatile double exitedTimestamp = 0;
+
+    // only touched by the sampling thread
+    private int sampledArmCount = 0;
+    private double baselineCurrent;
+    private double baselineVelocity;
+    private int baselineCount;
+    // free spinning current learned on the last intake, NaN before the first
+    private double intakeBaselineCurrent = Double.NaN;
+    private boolean coralIn;
+    private double changeStartTimestamp = Double.NaN;
+
+    public CoralSignatureDetector(SparkMax leader, SparkMax follower, ColorSensorSampler colorSensorSampler) {
+        this.leader = leader;
+        this.follower = follower;
+        this.colorSensorSampler = colorSensorSampler;
+        notifier.setName("CoralSignatureDetector");
+    }
+
+    public void start() {
+        notifier.startPeriodic(PERIOD_SECONDS);
+    }
+
+    /**
+     * Starts watching the motors, the baseline is learned again once they reach the setpoint
+     * @param setpointVelocity Wheel velocity the motors are spinning up to, in RPM
+     */
+    public void arm(Mode mode, double setpointVelocity) {
+        // the sampling thread sees the new count no later than the mode
+        this.setpoint = Math.abs(setpointVelocity);
+        armCount++;
+        this.mode = mode;
+    }
+
+    public void disarm() {
+        mode = Mode.IDLE;
+    }
+
+    public double getEnteredTimestamp() {
+        return enteredTimestamp;
+    }
+
+    public double getExitedTimestamp() {
+        return exitedTimestamp;
+    }
+
+    private void sample() {
+        Mode currentMode = mode;
+        if (currentMode == Mode.IDLE) {
+            return;
+        }
+        if (sampledArmCount != armCount) {
+            sampledArmCount = armCount;
+            changeStartTimestamp = Double.NaN;
+            if (currentMode == Mode.SHOOT) {
+                // the coral is between the wheels already, there is no free spinning to learn from
+                coralIn = true;
+                baselineCurrent = Double.isNaN(intakeBaselineCurrent)
+                    ? ShooterConstants.CORAL_FREE_CURRENT_AMPS : intakeBaselineCurrent;
+                baselineVelocity = setpoint;
+                baselineCount = BASELINE_SAMPLES;
+            } else {
+                coralIn = false;
+                baselineCount = 0;
+            }
+        }
+
+        double timestamp = Timer.getFPGATimestamp();
+        double current = Math.max(leader.getOutputCurrent(), follower.getOutputCurrent());
+        double velocity = Math.abs(leader.getEncoder().getVelocity());
+        double presence = colorSensorSampler == null ? -1 : colorSensorSampler.getLatest().present ? 1 : 0;
+        log.append(new double[] {current, velocity, currentMode.ordinal(), presence});
+
+        boolean loaded = baselineCount >= BASELINE_SAMPLES
+            && (current - baselineCurrent > ShooterConstants.CORAL_CURRENT_RISE_AMPS
+                || velocity < baselineVelocity * (1 - ShooterConstants.CORAL_VELOCITY_DIP));
+        boolean atSpeed = Math.abs(velocity - setpoint) < setpoint * AT_SPEED_TOLERANCE;
+        if (!loaded && !coralIn && atSpeed) {
+            double weight = baselineCount == 0 ? 1 : BASELINE_WEIGHT;
+            baselineCurrent += (current - baselineCurrent) * weight;
+            baselineVelocity += (velocity - baselineVelocity) * weight;
+            baselineCount++;
+            if (currentMode == Mode.INTAKE && baselineCount >= BASELINE_SAMPLES) {
+                intakeBaselineCurrent = baselineCurrent;
+            }
+        }
+
+        // the load has to last for the debounce time, the edge is dated to when it started
+        if (loaded == coralIn) {
+            changeStartTimestamp = Double.NaN;
+            return;
+        }
+        if (Double.isNaN(changeStartTimestamp)) {
+            changeStartTimestamp = timestamp;
+        }
+        double debounce = loaded ? ShooterConstants.CORAL_ENTRY_DEBOUNCE_SECONDS : ShooterConstants.CORAL_EXIT_DEBOUNCE_SECONDS;
+        if (timestamp - changeStartTimestamp >= debounce) {
+            coralIn = loaded;
+            if (loaded) {
+                enteredTimestamp = changeStartTimestamp;
+            } else {
+                exitedTimestamp = changeStartTimestamp;
+            }
+            changeStartTimestamp = Double.NaN;
+        }
+    }
+}
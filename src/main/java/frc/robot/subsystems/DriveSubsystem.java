@@ -1,6 +1,10 @@
 package frc.robot.subsystems;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.DoubleSupplier;
 
 import com.ctre.phoenix6.hardware.Pigeon2;
 import com.pathplanner.lib.auto.AutoBuilder;
@@ -13,12 +17,15 @@ import com.pathplanner.lib.path.GoalEndState;
 import com.pathplanner.lib.path.PathConstraints;
 import com.pathplanner.lib.path.PathPlannerPath;
 import com.pathplanner.lib.path.Waypoint;
+import com.pathplanner.lib.util.DriveFeedforwards;
+import com.pathplanner.lib.util.PathPlannerLogging;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
@@ -26,13 +33,23 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import edu.wpi.first.units.Units;
 import frc.robot.Constants;
 import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.PathfinderConstants;
+import frc.robot.commands.ReplanningDriveCommand;
 import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
 import edu.wpi.first.util.datalog.DoubleLogEntry;
 import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.util.DriveLimiter;
+import frc.robot.util.DriveLimits;
+import frc.robot.util.GridPathfinder;
+import frc.robot.util.LatencyTracer;
 import frc.robot.util.Logger;
+import frc.robot.util.SysIdSampler;
 
 public class DriveSubsystem extends SubsystemBase {
     // limelight camera to track apriltags
@@ -79,16 +96,78 @@ public class DriveSubsystem extends SubsystemBase {
     // initialize the field for simulator tracking
     private final Field2d m_field = new Field2d();
 
+    // ground truth pose of the simulated robot, pure odometry of the simulated modules
+    private SwerveDriveOdometry m_simOdometry;
+
+    // precomputed paths to the scoring and coral station locations
+    private final Optional<GridPathfinder> m_pathfinder;
+
+    // height of the elevator in encoder units, the center of mass rises with it
+    private DoubleSupplier m_elevatorPosition = () -> 0.0;
+    // speed, acceleration and jerk limits of the driver's commands at the elevator height
+    private final DriveLimiter m_driveLimiter = new DriveLimiter(() -> m_elevatorPosition.getAsDouble());
+
+    // setpoint of the path being followed, logged by the PathPlanner follower every cycle
+    private volatile Pose2d m_pathTargetPose = null;
+
+    // Characterization of the drive with the wheels straight ahead, and of the steering
+    private final SysIdRoutine m_driveSysIdRoutine = new SysIdRoutine(
+        new SysIdRoutine.Config(),
+        new SysIdRoutine.Mechanism(
+            voltage -> {
+                for (SwerveModule module : getModules()) {
+                    module.setDriveVoltage(voltage.in(Units.Volts));
+                }
+            },
+            log -> {
+                for (SwerveModule module : getModules()) {
+                    module.logDrive(log);
+                }
+            },
+            this, "drive"));
+    // the steering spins freely, a low step keeps the dynamic test from saturating the encoder velocity
+    private final SysIdRoutine m_steerSysIdRoutine = new SysIdRoutine(
+        new SysIdRoutine.Config(Units.Volts.per(Units.Second).of(0.5), Units.Volts.of(3.0), Units.Seconds.of(6.0)),
+        new SysIdRoutine.Mechanism(
+            voltage -> {
+                for (SwerveModule module : getModules()) {
+                    module.setSteerVoltage(voltage.in(Units.Volts));
+                }
+            },
+            log -> {
+                for (SwerveModule module : getModules()) {
+                    module.logSteer(log);
+                }
+            },
+            this, "steer"));
+    private final SysIdSampler m_driveSysIdSampler = new SysIdSampler("drive");
+    private final SysIdSampler m_steerSysIdSampler = new SysIdSampler("steer");
+
     private int updateCounter = 0;
 
     private DoubleLogEntry m_speedLog;
     private DoubleLogEntry m_headingLog;
+    // ground truth for offline estimator replay: [x (m), y (m), rotation (rad)]
+    public static final String TRUE_POSE_LOG_ENTRY = "/replay/truePose";
+    private DoubleArrayLogEntry m_truePoseLog;
 
     public DriveSubsystem(LimelightSubsystem limelight) {
         m_LimelightSubsystem = limelight;
         m_PoseEstimator = new PoseEstimator(this, m_LimelightSubsystem);
         // Reset the gyro
         m_gyro.reset();
+        m_simOdometry = new SwerveDriveOdometry(kinematics, getGyroRotation(), getModulePositions());
+
+        List<Pose2d> pathfinderGoals = new ArrayList<>();
+        pathfinderGoals.addAll(List.of(Constants.Locations.leftBranchLocations));
+        pathfinderGoals.addAll(List.of(Constants.Locations.rightBranchLocations));
+        pathfinderGoals.addAll(List.of(Constants.Locations.coralStationLocations));
+        m_pathfinder = GridPathfinder.load(pathfinderGoals.toArray(new Pose2d[0]));
+
+        for (SwerveModule module : getModules()) {
+            module.addDriveSignals(m_driveSysIdSampler);
+            module.addSteerSignals(m_steerSysIdSampler);
+        }
 
         // log field into smartdashboard
         SmartDashboard.putData("Field", m_field);
@@ -105,30 +184,36 @@ public class DriveSubsystem extends SubsystemBase {
                 this::getPose, // Robot pose supplier
                 this::resetOdometry, // Method to reset odometry (will be called if your auto has a starting pose)
                 this::getCurrentSpeeds, // ChassisSpeeds supplier. MUST BE ROBOT RELATIVE
-                (speeds, feedforwards) -> drive(speeds), // Method that will drive the robot given ROBOT RELATIVE ChassisSpeeds. Also optionally outputs individual module feedforwards
+                (speeds, feedforwards) -> driveRobotRelative(speeds, feedforwards), // Method that will drive the robot given ROBOT RELATIVE ChassisSpeeds and the individual module feedforwards
                 new PPHolonomicDriveController( // PPHolonomicController is the built in path following controller for holonomic drive trains
-                        new PIDConstants(5, 0.0, 0.0), // Translation PID constants
-                        new PIDConstants(3.0, 0.0, 0.0) // Rotation PID constants
+                        DriveConstants.AUTO_TRANSLATION_PID, // Translation PID constants
+                        DriveConstants.AUTO_ROTATION_PID // Rotation PID constants
                 ),
                 DriveConstants.pathPlannerConfig, // The robot configuration
-                () -> {
                 // Boolean supplier that controls when the path will be mirrored for the red alliance
                 // This will flip the path being followed to the red side of the field.
                 // THE ORIGIN WILL REMAIN ON THE BLUE SIDE
-
-                var alliance = DriverStation.getAlliance();
-                if (alliance.isPresent()) {
-                    return alliance.get() == DriverStation.Alliance.Red;
-                }
-                return false; 
-                }, 
+                DriveSubsystem::shouldFlipPath,
                 this // Reference to this subsystem to set requirements
         ); 
+        PathPlannerLogging.setLogTargetPoseCallback(pose -> m_pathTargetPose = pose);
 
         // Initialize DataLogManager entries
         DataLog log = DataLogManager.getLog();
         m_speedLog = new DoubleLogEntry(log, "/drive/speed");
         m_headingLog = new DoubleLogEntry(log, "/drive/heading");
+        m_truePoseLog = new DoubleArrayLogEntry(log, TRUE_POSE_LOG_ENTRY);
+    }
+
+    /**
+     * Whether paths should be mirrored to the red side of the field, the origin stays on the blue side
+     */
+    public static boolean shouldFlipPath() {
+        var alliance = DriverStation.getAlliance();
+        if (alliance.isPresent()) {
+            return alliance.get() == DriverStation.Alliance.Red;
+        }
+        return false;
     }
 
     /**
@@ -139,26 +224,41 @@ public class DriveSubsystem extends SubsystemBase {
      * @param rot Angular rate of the robot.
      */
     public void drive(double xSpeed, double ySpeed, double rot) {
+        drive(xSpeed, ySpeed, rot, Double.NaN);
+    }
+
+    /**
+     * Method to drive the robot using joystick info, tracing the latency of the input.
+     *
+     * @param xSpeed Speed of the robot in the x direction (forward).
+     * @param ySpeed Speed of the robot in the y direction (sideways).
+     * @param rot Angular rate of the robot.
+     * @param inputTimestamp FPGA timestamp (seconds) the input was sampled, NaN if not traced.
+     */
+    public void drive(double xSpeed, double ySpeed, double rot, double inputTimestamp) {
         // Debug input values
         SmartDashboard.putNumber("Drive/Input/X", xSpeed);
         SmartDashboard.putNumber("Drive/Input/Y", ySpeed);
         SmartDashboard.putNumber("Drive/Input/Rot", rot);
 
-        // If all inputs are zero, stop the motors
-        if (Math.abs(xSpeed) < 1E-6 && Math.abs(ySpeed) < 1E-6 && Math.abs(rot) < 1E-6) {
-            stop();
-            return;
-        }
-
-        // Convert the commanded speeds from [-1, 1] to real speeds
+        // Convert the commanded speeds from [-1, 1] to real speeds, limited to what the robot can do
+        // at the elevator height
         xSpeed = xSpeed * DriveConstants.MAX_SPEED_IN_MPS;
         ySpeed = ySpeed * DriveConstants.MAX_SPEED_IN_MPS;
         rot = rot * DriveConstants.MAX_ANGULAR_SPEED_IN_RPS;
+        ChassisSpeeds speeds = m_driveLimiter.calculate(new ChassisSpeeds(xSpeed, ySpeed, rot));
+
+        // Once the robot has slowed down to zero, stop the motors
+        if (Math.abs(speeds.vxMetersPerSecond) < 1E-6 && Math.abs(speeds.vyMetersPerSecond) < 1E-6
+                && Math.abs(speeds.omegaRadiansPerSecond) < 1E-6) {
+            stop();
+            LatencyTracer.recordSince(LatencyTracer.DRIVER_INPUT_TO_ACTUATOR, inputTimestamp);
+            return;
+        }
 
-        ChassisSpeeds speeds = new ChassisSpeeds(xSpeed, ySpeed, rot);
         var swerveModuleStates = kinematics.toSwerveModuleStates(speeds);
 
-        SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, 4.0);
+        SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, DriveConstants.MAX_SPEED_IN_MPS);
 
         SmartDashboard.putNumber("Chasis Speeds X", speeds.vxMetersPerSecond);
         SmartDashboard.putNumber("Chasis Speeds Y", speeds.vyMetersPerSecond);
@@ -189,6 +289,40 @@ public class DriveSubsystem extends SubsystemBase {
         m_frontRight.setDesiredState(swerveModuleStates[1]);
         m_backLeft.setDesiredState(swerveModuleStates[2]);
         m_backRight.setDesiredState(swerveModuleStates[3]);
+        // every module has its new reference now
+        LatencyTracer.recordSince(LatencyTracer.DRIVER_INPUT_TO_ACTUATOR, inputTimestamp);
+    }
+
+    /**
+     * Drives the robot with robot relative speeds in real units (m/s and rad/s), without the
+     * joystick scaling of {@link #drive(double, double, double)}. Used by closed loop controllers.
+     *
+     * @param speeds Robot relative chassis speeds
+     */
+    public void driveRobotRelative(ChassisSpeeds speeds) {
+        driveRobotRelative(speeds, null);
+    }
+
+    /**
+     * Drives the robot with robot relative speeds in real units and the module forces of a path,
+     * which are added to the velocity loops of the drive motors as feedforward. Used by path following.
+     *
+     * @param speeds Robot relative chassis speeds
+     * @param feedforwards Module feedforwards in the same order as the kinematics, null for none
+     */
+    public void driveRobotRelative(ChassisSpeeds speeds, DriveFeedforwards feedforwards) {
+        // compensate for the translation that happens while rotating during one loop
+        ChassisSpeeds discreteSpeeds = ChassisSpeeds.discretize(speeds, 0.02);
+        var swerveModuleStates = kinematics.toSwerveModuleStates(discreteSpeeds);
+        SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, DriveConstants.MAX_SPEED_IN_MPS);
+        // the driver takes over from these speeds
+        m_driveLimiter.reset(speeds);
+
+        double[] forces = feedforwards != null ? feedforwards.linearForcesNewtons() : new double[4];
+        m_frontLeft.setDesiredState(swerveModuleStates[0], forces[0]);
+        m_frontRight.setDesiredState(swerveModuleStates[1], forces[1]);
+        m_backLeft.setDesiredState(swerveModuleStates[2], forces[2]);
+        m_backRight.setDesiredState(swerveModuleStates[3], forces[3]);
     }
 
     public void drive(ChassisSpeeds speeds) {
@@ -203,6 +337,7 @@ public class DriveSubsystem extends SubsystemBase {
         m_frontRight.stop();
         m_backLeft.stop();
         m_backRight.stop();
+        m_driveLimiter.reset(new ChassisSpeeds());
     }
 
     /**
@@ -224,6 +359,14 @@ public class DriveSubsystem extends SubsystemBase {
      */
     public void resetOdometry(Pose2d pose) {
         m_PoseEstimator.setCurrentPose(pose);
+        m_simOdometry.resetPosition(getGyroRotation(), getModulePositions(), pose);
+    }
+
+    /**
+     * Returns the ground truth pose of the simulated robot, used by simulated sensors
+     */
+    public Pose2d getSimulatedPose() {
+        return m_simOdometry.getPoseMeters();
     }
 
     public ChassisSpeeds getCurrentSpeeds() {
@@ -234,8 +377,38 @@ public class DriveSubsystem extends SubsystemBase {
         return kinematics;
     }
 
+    /**
+     * @return the grid pathfinder to the scoring and coral station locations, empty if the navgrid could not be loaded
+     */
+    public Optional<GridPathfinder> getPathfinder() {
+        return m_pathfinder;
+    }
+
+    /**
+     * @return the setpoint of the path being followed in the last cycle, null before any path ran
+     */
+    public Pose2d getPathTargetPose() {
+        return m_pathTargetPose;
+    }
+
+    /**
+     * Sets where the drive limits read the elevator height from, in encoder units
+     */
+    public void setElevatorPositionSupplier(DoubleSupplier elevatorPosition) {
+        m_elevatorPosition = elevatorPosition;
+    }
+
+    /**
+     * Registers an extra vision source with the pose estimator
+     */
+    public void addVisionSource(VisionSource source) {
+        m_PoseEstimator.addVisionSource(source);
+    }
+
     @Override
     public void periodic() {
+        m_driveLimiter.updateLimits();
+
         // Only update SmartDashboard every 10 cycles to reduce NT traffic
         updateCounter++;
         if (updateCounter >= 50) {
@@ -338,10 +511,37 @@ public class DriveSubsystem extends SubsystemBase {
         return getGyroRotation();
     }
     
-    public Command driveToEndPose(Pose2d endPose) {
-        PathConstraints constraints = new PathConstraints(3.0, 3.0, 2 * Math.PI, 4 * Math.PI);
+    /**
+     * Constraints of the paths driven to poses on the field, at the physical limits of the robot
+     * with the elevator at its current height
+     */
+    public PathConstraints getPathConstraints() {
+        if (DriveConstants.pathPlannerConfig == null) {
+            return new PathConstraints(
+                PathfinderConstants.MAX_SPEED_MPS, PathfinderConstants.MAX_ACCELERATION_MPSS,
+                PathfinderConstants.MAX_ANGULAR_SPEED_RPS, PathfinderConstants.MAX_ANGULAR_ACCELERATION_RPSS);
+        }
+        return DriveLimits.getConstraints(DriveConstants.pathPlannerConfig, m_elevatorPosition.getAsDouble());
+    }
 
-        return AutoBuilder.pathfindToPose(endPose, constraints, 0.0);
+    /**
+     * Drives to a pose, with a path from the grid pathfinder that is replanned when the robot is
+     * pushed off it, when the pose is one of the scoring or coral station locations, otherwise with
+     * the PathPlanner pathfinder
+     */
+    public Command driveToEndPose(Pose2d endPose) {
+        // plan when the command starts, from where the robot is then
+        return Commands.defer(() -> {
+            PathConstraints constraints = getPathConstraints();
+            ChassisSpeeds speeds = getCurrentSpeeds();
+            Optional<PathPlannerPath> path = m_pathfinder.flatMap(pathfinder -> pathfinder.plan(
+                getPose(), Math.hypot(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond), endPose, constraints));
+            if (path.isEmpty()) {
+                return AutoBuilder.pathfindToPose(endPose, constraints, 0.0);
+            }
+            SmartDashboard.putNumber("Pathfinder/Plan time (ms)", m_pathfinder.get().getLastPlanMillis());
+            return new ReplanningDriveCommand(this, endPose, path.get());
+        }, Set.of(this));
     }
    /*  private PathPlannerPath createPathToEndPose(Pose2d endPose) {
         List<Waypoint> waypoints = PathPlannerPath.waypointsFromPoses(
@@ -391,6 +591,38 @@ public class DriveSubsystem extends SubsystemBase {
         }
     } */
     
+    private SwerveModule[] getModules() {
+        return new SwerveModule[] {m_frontLeft, m_frontRight, m_backLeft, m_backRight};
+    }
+
+    /**
+     * Quasistatic SysId test of the drive motors, the robot drives straight ahead or back
+     */
+    public Command sysIdDriveQuasistatic(SysIdRoutine.Direction direction) {
+        return m_driveSysIdSampler.sampling(m_driveSysIdRoutine.quasistatic(direction));
+    }
+
+    /**
+     * Dynamic SysId test of the drive motors, the robot drives straight ahead or back
+     */
+    public Command sysIdDriveDynamic(SysIdRoutine.Direction direction) {
+        return m_driveSysIdSampler.sampling(m_driveSysIdRoutine.dynamic(direction));
+    }
+
+    /**
+     * Quasistatic SysId test of the steering motors, the robot stays in place
+     */
+    public Command sysIdSteerQuasistatic(SysIdRoutine.Direction direction) {
+        return m_steerSysIdSampler.sampling(m_steerSysIdRoutine.quasistatic(direction));
+    }
+
+    /**
+     * Dynamic SysId test of the steering motors, the robot stays in place
+     */
+    public Command sysIdSteerDynamic(SysIdRoutine.Direction direction) {
+        return m_steerSysIdSampler.sampling(m_steerSysIdRoutine.dynamic(direction));
+    }
+
     @Override
     public void simulationPeriodic() {
         m_frontLeft.updateSimulatorState();
@@ -400,6 +632,10 @@ public class DriveSubsystem extends SubsystemBase {
 
         double angularVelocity = kinematics.toChassisSpeeds(getModuleStates()).omegaRadiansPerSecond;
         updateGyroSimulatorState(angularVelocity);
+
+        m_simOdometry.update(getGyroRotation(), getModulePositions());
+        Pose2d truePose = m_simOdometry.getPoseMeters();
+        m_truePoseLog.append(new double[] {truePose.getX(), truePose.getY(), truePose.getRotation().getRadians()});
     }
 
     public void updateGyroSimulatorState(double angularVelocity) {
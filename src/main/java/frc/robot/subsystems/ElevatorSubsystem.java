@@ -1,30 +1,37 @@
 package frc.robot.subsystems;
 
 import com.revrobotics.spark.SparkMax;
-import com.revrobotics.spark.ClosedLoopSlot;
-import com.revrobotics.spark.SparkClosedLoopController;
 import com.revrobotics.spark.SparkBase.ControlType;
-import com.revrobotics.spark.SparkBase.PersistMode;
-import com.revrobotics.spark.SparkBase.ResetMode;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.sim.SparkMaxSim;
 import com.revrobotics.spark.config.SparkMaxConfig;
 import com.revrobotics.spark.config.ClosedLoopConfig.FeedbackSensor;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.simulation.DIOSim;
+import edu.wpi.first.wpilibj.simulation.ElevatorSim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import edu.wpi.first.units.Units;
 import edu.wpi.first.math.system.plant.DCMotor;
-import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.math.controller.ElevatorFeedforward;
 import com.revrobotics.spark.config.SparkBaseConfig.IdleMode;
 import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.ElevatorConstants;
 import frc.robot.util.Logger;
+import frc.robot.util.SysIdSampler;
 
 public class ElevatorSubsystem extends SubsystemBase {
     private final SparkMax primaryElevatorMotor;
     private final SparkMax secondaryElevatorMotor;
+    // the secondary motor follows the primary in hardware, commands go to the primary only
+    private final LeaderFollowerPair motors;
     private final RelativeEncoder encoder;
-    private final SparkClosedLoopController closedLoopController;
     private final DigitalInput topLimitSwitch;
     private final DigitalInput bottomLimitSwitch;
 
@@ -32,6 +39,9 @@ public class ElevatorSubsystem extends SubsystemBase {
     private final DCMotor elevatorDCMotor;
     private final SparkMaxSim primaryElevatorMotorSim;
     private final SparkMaxSim secondaryElevatorMotorSim;
+    private final ElevatorSim elevatorSim;
+    private final DIOSim topLimitSwitchSim;
+    private final DIOSim bottomLimitSwitchSim;
 
     // Constants
     private static final double MAX_OUTPUT = 1.0;
@@ -49,46 +59,59 @@ public class ElevatorSubsystem extends SubsystemBase {
     private static final double LEVEL_3_HEIGHT = 27.1;  // Top level
 
     // PID Constants - Tune these values during testing
-    private static final double kP = 0.55;
+    // The feedforward does most of the work, the PID only corrects the error to the profile setpoint
+    private static final double kP = 0.2;
     private static final double kI = 0.0;
-    private static final double kD = 0.1;
-    private static final double kFF = 0.0;
-
-    // Downward motion
-    private static final double kP_1 = 0.05;
-    private static final double kI_1 = 0.0;
-    private static final double kD_1 = 0.0;
-    private static final double kFF_1 = 0.0;
-
-    // Motion profile constants - controls speed in closed-loop mode
-    // These are kept for future reference but not currently used
-    private static final double MAX_VELOCITY = 20.0; // Maximum velocity in encoder units per second
-    private static final double MAX_ACCELERATION = 40.0; // Maximum acceleration in encoder units per second squared
-    private static final boolean USE_MOTION_PROFILE = false; // Set to true to use motion profiling
-
-    // Torque mode constants
-    private static final double ELEVATOR_TORQUE = 0.4; // Initial torque for movement (0-1)
-    private static final double MIN_TORQUE_OUTPUT = 0.15; // Minimum output to overcome static friction
-    private static final double TORQUE_TIMEOUT = 1; // Time in seconds to apply torque before switching to PID
-    private static final double POSITION_ERROR_THRESHOLD = 2.0; // Error threshold to switch to torque mode
-    
+    private static final double kD = 0.0;
+
+    // Feedforward in volts, per encoder unit per second and per encoder unit per second squared
+    private static final double kS = Configs.Feedforward.ELEVATOR_KS;  // Static friction
+    private static final double kG = Configs.Feedforward.ELEVATOR_KG;  // Holds the carriage against gravity
+    private static final double kV = Configs.Feedforward.ELEVATOR_KV;
+    private static final double kA = Configs.Feedforward.ELEVATOR_KA;
+
+    // Motion profile constants
+    private static final double MAX_VELOCITY = 40.0; // Maximum velocity in encoder units per second
+    private static final double MAX_ACCELERATION = 120.0; // Maximum acceleration in encoder units per second squared
+    // A move is settled once it is within tolerance and slower than this, in encoder units per second
+    private static final double SETTLED_VELOCITY = 1.0;
+
     private static final int MAX_CURRENT = 40;
+    // the motors share one gearbox, they only disagree when something is wrong
+    private static final double FOLLOWER_CURRENT_TOLERANCE = 10.0; // Amps
+    private static final double FOLLOWER_VELOCITY_TOLERANCE = 500.0; // RPM
     
     // Position Control
     private double targetPosition = 0.0;
-    private boolean inTorqueMode = false;
-    private Timer torqueModeTimer = new Timer();
-    
-    // Error filter for smoother transitions
-    private LinearFilter errorFilter;
+    private final TrapezoidProfile profile = new TrapezoidProfile(new TrapezoidProfile.Constraints(MAX_VELOCITY, MAX_ACCELERATION));
+    private final ElevatorFeedforward feedforward = new ElevatorFeedforward(kS, kG, kV, kA);
+    private TrapezoidProfile.State setpoint = new TrapezoidProfile.State();
+    // whether the closed loop is following the profile, false after the elevator was stopped
+    // written by the limit switch interrupts, which stop the elevator under the control lock
+    private volatile boolean closedLoopActive = false;
+    private final Object controlLock = new Object();
+
+    // Time to settle of the current move
+    private final Timer moveTimer = new Timer();
+    private double moveStartPosition = 0.0;
+    private double moveOvershoot = 0.0;
+    private boolean moveSettled = true;
+    private double lastSettleSeconds = Double.NaN;
 
     // Periodic counter for status updates
     private int periodicCounter = 0;
 
-    // Auto-calibration variables
-    private boolean wasAtBottom = false;
-    private Timer bottomDwellTimer = new Timer();
-    private static final double AUTO_CALIBRATION_DWELL_TIME = 2.0; // seconds
+    // Limit switch interrupts, they stop the elevator on the edge instead of the next loop
+    private final AsynchronousInterrupt topLimitInterrupt;
+    private final AsynchronousInterrupt bottomLimitInterrupt;
+    // encoder position at the last edge of each switch, NaN once handled by periodic
+    private volatile double topEdgePosition = Double.NaN;
+    private volatile double bottomEdgePosition = Double.NaN;
+
+    // Characterization, the tests stop this far from the ends of the travel, in encoder units
+    private static final double SYSID_END_MARGIN = 2.0;
+    private final SysIdRoutine sysIdRoutine;
+    private final SysIdSampler sysIdSampler;
 
     /*
      * Elevator max height = 63 inches
@@ -106,12 +129,8 @@ public class ElevatorSubsystem extends SubsystemBase {
         topLimitSwitch = new DigitalInput(topLimitSwitchId);
         bottomLimitSwitch = new DigitalInput(bottomLimitSwitchId);
         
-        // Get encoder and controller from primary motor
+        // Get encoder from primary motor
         encoder = primaryElevatorMotor.getEncoder();
-        closedLoopController = primaryElevatorMotor.getClosedLoopController();
-
-        // Initialize error filter (single pole IIR filter with 0.1 time constant)
-        errorFilter = LinearFilter.singlePoleIIR(0.1, 0.02);
 
         // Configure the primary motor with PID
         SparkMaxConfig primaryConfig = new SparkMaxConfig();
@@ -122,49 +141,52 @@ public class ElevatorSubsystem extends SubsystemBase {
         primaryConfig.closedLoop
             .feedbackSensor(FeedbackSensor.kPrimaryEncoder)
             .pid(kP, kI, kD)
-            .velocityFF(kFF)
-            .outputRange(MIN_OUTPUT, MAX_OUTPUT)
-            .p(kP_1, ClosedLoopSlot.kSlot1)
-            .i(kI_1, ClosedLoopSlot.kSlot1)
-            .d(kD_1, ClosedLoopSlot.kSlot1);
-            
-        // Configure motion profiling if enabled
-        if (USE_MOTION_PROFILE) {
-            // We'll use standard PID with higher output limits instead of SmartMotion
-            primaryConfig.closedLoop
-                .outputRange(-1.0, 1.0); // Full range for faster movement
-        }
-            
-        primaryElevatorMotor.configure(
-            primaryConfig,
-            ResetMode.kResetSafeParameters,
-            PersistMode.kPersistParameters
-        );
+            .outputRange(MIN_OUTPUT, MAX_OUTPUT);
         
-        // Configure the secondary motor (follower)
+        // Configure the secondary motor (follower), it pushes with the primary motor's output
         SparkMaxConfig secondaryConfig = new SparkMaxConfig();
         secondaryConfig
             .idleMode(IdleMode.kBrake)
             .smartCurrentLimit(MAX_CURRENT);
-        
-        secondaryElevatorMotor.configure(
-            secondaryConfig,
-            ResetMode.kResetSafeParameters,
-            PersistMode.kPersistParameters
-        );
+
+        motors = new LeaderFollowerPair("Elevator", primaryElevatorMotor, primaryConfig,
+            secondaryElevatorMotor, secondaryConfig, false,
+            FOLLOWER_CURRENT_TOLERANCE, FOLLOWER_VELOCITY_TOLERANCE);
         
         // Reset encoder position
         resetEncoder();
+
+        // The switches pull the input low when pressed, so pressing is a falling edge
+        topLimitInterrupt = new AsynchronousInterrupt(topLimitSwitch, (rising, falling) -> onTopLimitEdge(falling));
+        topLimitInterrupt.setInterruptEdges(false, true);
+        bottomLimitInterrupt = new AsynchronousInterrupt(bottomLimitSwitch, (rising, falling) -> onBottomLimitEdge(falling));
+        bottomLimitInterrupt.setInterruptEdges(false, true);
         
         // Initialize simulation objects if in simulation mode
         if (RobotBase.isSimulation()) {
             elevatorDCMotor = DCMotor.getNEO(1);
             primaryElevatorMotorSim = new SparkMaxSim(primaryElevatorMotor, elevatorDCMotor);
             secondaryElevatorMotorSim = new SparkMaxSim(secondaryElevatorMotor, elevatorDCMotor);
+            // both NEOs drive the carriage, it starts resting on the bottom limit switch
+            elevatorSim = new ElevatorSim(
+                DCMotor.getNEO(2),
+                ElevatorConstants.GEAR_RATIO,
+                ElevatorConstants.CARRIAGE_MASS_KG,
+                ElevatorConstants.DRUM_RADIUS_METERS,
+                0.0,
+                TOP_THRESHOLD / ElevatorConstants.ROTATIONS_PER_METER,
+                true,
+                0.0);
+            topLimitSwitchSim = new DIOSim(topLimitSwitch);
+            bottomLimitSwitchSim = new DIOSim(bottomLimitSwitch);
+            updateLimitSwitchSims();
         } else {
             elevatorDCMotor = null;
             primaryElevatorMotorSim = null;
             secondaryElevatorMotorSim = null;
+            elevatorSim = null;
+            topLimitSwitchSim = null;
+            bottomLimitSwitchSim = null;
         }
         
         // Log initialization
@@ -176,11 +198,94 @@ public class ElevatorSubsystem extends SubsystemBase {
         } else {
             Logger.log("Elevator initialization complete, not at bottom limit switch");
         }
-        
+
+        topLimitInterrupt.enable();
+        bottomLimitInterrupt.enable();
+
+        // gentler than the defaults, the carriage covers its travel in a few seconds
+        sysIdRoutine = new SysIdRoutine(
+            new SysIdRoutine.Config(Units.Volts.per(Units.Second).of(1.0), Units.Volts.of(4.0), Units.Seconds.of(5.0)),
+            new SysIdRoutine.Mechanism(
+                voltage -> setVoltage(voltage.in(Units.Volts)),
+                log -> log.motor("elevator")
+                    .voltage(Units.Volts.of(primaryElevatorMotor.getAppliedOutput() * primaryElevatorMotor.getBusVoltage()))
+                    .angularPosition(Units.Rotations.of(getCurrentPosition()))
+                    .angularVelocity(Units.RotationsPerSecond.of(getVelocity())),
+                this));
+        sysIdSampler = new SysIdSampler("elevator")
+            .add("primary", primaryElevatorMotor, this::getCurrentPosition, this::getVelocity);
+    }
+
+    /**
+     * Runs on the interrupt thread when the top switch is pressed: stops the elevator if it is not
+     * already moving down, and records where the switch was hit
+     */
+    private void onTopLimitEdge(boolean pressed) {
+        if (!pressed) {
+            return;
+        }
+        synchronized (controlLock) {
+            if (getVelocity() >= 0) {
+                motors.stopMotor();
+                closedLoopActive = false;
+            }
+        }
+        topEdgePosition = getCurrentPosition();
+        SmartDashboard.putNumber("Elevator/Limit reaction (ms)",
+            (Timer.getFPGATimestamp() - topLimitInterrupt.getFallingTimestamp()) * 1000);
+    }
+
+    /**
+     * Runs on the interrupt thread when the bottom switch is pressed: stops the elevator if it is
+     * not already moving up, and records where the switch was hit to recalibrate the zero
+     */
+    private void onBottomLimitEdge(boolean pressed) {
+        if (!pressed) {
+            return;
+        }
+        synchronized (controlLock) {
+            if (getVelocity() <= 0) {
+                motors.stopMotor();
+                closedLoopActive = false;
+            }
+        }
+        bottomEdgePosition = getCurrentPosition();
+        SmartDashboard.putNumber("Elevator/Limit reaction (ms)",
+            (Timer.getFPGATimestamp() - bottomLimitInterrupt.getFallingTimestamp()) * 1000);
+    }
+
+    /**
+     * Handles the limit switch edges recorded by the interrupts on the main thread
+     */
+    private void handleLimitEdges() {
+        double topEdge = topEdgePosition;
+        if (!Double.isNaN(topEdge)) {
+            topEdgePosition = Double.NaN;
+            // hold just below the switch instead of sliding back down
+            Logger.log("Elevator hit the top limit switch at " + topEdge + ", holding there");
+            targetPosition = Math.min(targetPosition, topEdge);
+            setpoint = new TrapezoidProfile.State(getCurrentPosition(), 0);
+            moveSettled = true;
+            closedLoopActive = true;
+        }
+
+        double bottomEdge = bottomEdgePosition;
+        if (!Double.isNaN(bottomEdge)) {
+            bottomEdgePosition = Double.NaN;
+            // the switch is the zero, shift the encoder by where it read at the edge
+            if (Math.abs(bottomEdge) > TOLERANCE) {
+                Logger.log("Auto-calibrating elevator on the bottom limit switch edge, encoder was off by " + bottomEdge);
+            }
+            encoder.setPosition(getCurrentPosition() - bottomEdge);
+            targetPosition = 0.0;
+            setpoint = new TrapezoidProfile.State(0.0, 0.0);
+            moveSettled = true;
+        }
     }
     
     /**
-     * Set the target position for the elevator
+     * Set the target position for the elevator. The elevator moves there along a trapezoid profile,
+     * starting from the current setpoint when it is already moving
      * @param position Target position in encoder units
      */
     public void setTargetPosition(double position) {
@@ -189,65 +294,74 @@ public class ElevatorSubsystem extends SubsystemBase {
         
         targetPosition = position;
         Logger.log("Setting elevator position to " + position + " (current: " + getCurrentPosition() + ")");
-        
-        // Calculate error to determine if we need torque mode
-        double error = targetPosition - getCurrentPosition();
-        double absError = Math.abs(error);
-        
-        // Only use torque mode for upward motion with large error
-        if (absError > POSITION_ERROR_THRESHOLD && error > 0) {
-            // If error is large and we're moving up, use torque mode for initial movement
-            Logger.log("Using torque mode for upward motion");
-            enableTorqueMode();
-        } else if (error < 0) {
-            // For downward motion or small adjustments, just use PID
-            Logger.log("Using PID profile for downward motion or small adjustments");
-            closedLoopController.setReference(position, ControlType.kPosition, ClosedLoopSlot.kSlot1);
-        } else {
-            Logger.log("Using default PID controller for small adjustments");
-            closedLoopController.setReference(position, ControlType.kPosition, ClosedLoopSlot.kSlot0);
+
+        if (!closedLoopActive) {
+            setpoint = new TrapezoidProfile.State(getCurrentPosition(), getVelocity());
+            closedLoopActive = true;
         }
+        moveStartPosition = getCurrentPosition();
+        moveOvershoot = 0.0;
+        moveSettled = false;
+        moveTimer.restart();
+        followProfile();
     }
-    
+
     /**
-     * Enable torque mode for initial movement
+     * Advances the profile by one loop and sends the setpoint with its feedforward to the controller
      */
-    private void enableTorqueMode() {
-        inTorqueMode = true;
-        torqueModeTimer.reset();
-        torqueModeTimer.start();
-        
-        // Determine direction based on error
-        double direction = targetPosition > getCurrentPosition() ? 1.0 : -1.0;
-        
-        // Apply torque in the correct direction
-        double torqueOutput = ELEVATOR_TORQUE * direction;
-        
-        // Ensure we're applying enough power to overcome static friction
-        if (Math.abs(torqueOutput) < MIN_TORQUE_OUTPUT) {
-            torqueOutput = MIN_TORQUE_OUTPUT * direction;
+    private void followProfile() {
+        double previousVelocity = setpoint.velocity;
+        setpoint = profile.calculate(0.02, setpoint, new TrapezoidProfile.State(targetPosition, 0));
+        double feedforwardVolts = feedforward.calculateWithVelocities(previousVelocity, setpoint.velocity);
+        synchronized (controlLock) {
+            // a limit switch may have stopped the elevator since this loop started
+            if (closedLoopActive) {
+                motors.setReference(setpoint.position, ControlType.kPosition, feedforwardVolts);
+            }
         }
-        
-        // Set both motors to the same torque output
-        primaryElevatorMotor.set(torqueOutput);
-        secondaryElevatorMotor.set(torqueOutput);
-        
-        Logger.log("Enabling torque mode with output: " + torqueOutput);
     }
-    
+
     /**
-     * Disable torque mode and switch to PID control
+     * Reports how long the current move took to settle at the target and how far it overshot
      */
-    private void disableTorqueMode() {
-        inTorqueMode = false;
-        torqueModeTimer.stop();
-        
-        // Switch to PID control
-        closedLoopController.setReference(targetPosition, ControlType.kPosition);
-        
-        Logger.log("Switching to PID control");
+    private void updateTimeToSettle() {
+        if (moveSettled) {
+            return;
+        }
+        double direction = Math.signum(targetPosition - moveStartPosition);
+        moveOvershoot = Math.max(moveOvershoot, (getCurrentPosition() - targetPosition) * direction);
+        if (atTargetPosition() && Math.abs(getVelocity()) < SETTLED_VELOCITY) {
+            moveSettled = true;
+            lastSettleSeconds = moveTimer.get();
+            double profileSeconds = estimateTravelSeconds(moveStartPosition, targetPosition);
+            Logger.logf("Elevator move %.2f -> %.2f settled in %.2f s (profile %.2f s), overshoot %.2f",
+                moveStartPosition, targetPosition, moveTimer.get(), profileSeconds, moveOvershoot);
+            SmartDashboard.putNumber("Elevator/Time to settle (s)", moveTimer.get());
+            SmartDashboard.putNumber("Elevator/Overshoot", moveOvershoot);
+        }
     }
     
+    /**
+     * @return true once the last move settled at its target, or when the elevator was stopped
+     */
+    public boolean isMoveSettled() {
+        return moveSettled;
+    }
+
+    /**
+     * @return how long the last settled move took, in seconds
+     */
+    public double getLastSettleSeconds() {
+        return lastSettleSeconds;
+    }
+
+    /**
+     * @return how far the last move went past its target, in encoder units
+     */
+    public double getLastOvershoot() {
+        return moveOvershoot;
+    }
+
     /**
      * Get the current position of the elevator in encoder units
      * @return Current position
@@ -255,6 +369,14 @@ public class ElevatorSubsystem extends SubsystemBase {
     public double getCurrentPosition() {
         return encoder.getPosition();
     }
+
+    /**
+     * @return Current velocity in encoder units per second
+     */
+    public double getVelocity() {
+        // the encoder reports per minute
+        return encoder.getVelocity() / 60;
+    }
     
     /**
      * Check if the elevator is at the target position
@@ -263,6 +385,30 @@ public class ElevatorSubsystem extends SubsystemBase {
     public boolean atTargetPosition() {
         return Math.abs(getCurrentPosition() - targetPosition) < TOLERANCE;
     }
+
+    /**
+     * Predicts how long until the elevator reaches its target from its current velocity, braking at
+     * the profile's acceleration once it has to
+     * @return seconds until arrival, 0 when already at the target
+     */
+    public double predictArrivalSeconds() {
+        if (atTargetPosition()) {
+            return 0.0;
+        }
+        double remaining = targetPosition - getCurrentPosition();
+        // speed towards the target, a carriage at rest or moving away follows a new profile
+        double speed = getVelocity() * Math.signum(remaining);
+        if (speed < SETTLED_VELOCITY) {
+            return estimateTravelSeconds(getCurrentPosition(), targetPosition);
+        }
+        double distance = Math.abs(remaining);
+        double brakingDistance = speed * speed / (2 * MAX_ACCELERATION);
+        if (distance <= brakingDistance) {
+            // already braking, at half the current speed on average
+            return 2 * distance / speed;
+        }
+        return (distance - brakingDistance) / speed + speed / MAX_ACCELERATION;
+    }
     
     /**
      * Check if the elevator is at the top limit
@@ -302,6 +448,7 @@ public class ElevatorSubsystem extends SubsystemBase {
         
         // Update the target position to match the new zero
         targetPosition = 0.0;
+        setpoint = new TrapezoidProfile.State(0.0, 0.0);
         
         Logger.log("Elevator zero position calibrated. New position: " + getCurrentPosition());
         return previousPosition;
@@ -326,10 +473,47 @@ public class ElevatorSubsystem extends SubsystemBase {
      */
     public void stop() {
         Logger.log("***** Stopping elevator at position: " + getCurrentPosition());
-        primaryElevatorMotor.stopMotor();
-        secondaryElevatorMotor.stopMotor();  // Stop both motors
-        inTorqueMode = false;
-        torqueModeTimer.stop();
+        synchronized (controlLock) {
+            motors.stopMotor();
+            closedLoopActive = false;
+        }
+        moveSettled = true;
+    }
+
+    /**
+     * Drives the elevator open loop, for characterization. It is not driven into a pressed limit
+     * switch, and the switch interrupts still stop it on their edge
+     * @param volts Voltage of both motors, positive is up
+     */
+    public void setVoltage(double volts) {
+        if ((volts > 0 && isAtTop()) || (volts < 0 && isAtBottom())) {
+            volts = 0;
+        }
+        synchronized (controlLock) {
+            closedLoopActive = false;
+            motors.setVoltage(volts);
+        }
+        moveSettled = true;
+    }
+
+    /**
+     * Quasistatic SysId test, the voltage ramps up slowly. Stops short of the end of the travel
+     */
+    public Command sysIdQuasistatic(SysIdRoutine.Direction direction) {
+        return sysIdSampler.sampling(sysIdRoutine.quasistatic(direction).until(() -> isNearEndOfTravel(direction)));
+    }
+
+    /**
+     * Dynamic SysId test, a voltage step. Stops short of the end of the travel
+     */
+    public Command sysIdDynamic(SysIdRoutine.Direction direction) {
+        return sysIdSampler.sampling(sysIdRoutine.dynamic(direction).until(() -> isNearEndOfTravel(direction)));
+    }
+
+    private boolean isNearEndOfTravel(SysIdRoutine.Direction direction) {
+        return direction == SysIdRoutine.Direction.kForward
+            ? getCurrentPosition() > LEVEL_3_HEIGHT || isAtTop()
+            : getCurrentPosition() < LEVEL_0_HEIGHT + SYSID_END_MARGIN || isAtBottom();
     }
 
     /**
@@ -357,6 +541,43 @@ public class ElevatorSubsystem extends SubsystemBase {
         }
     }
 
+    /**
+     * Gets the height of a predefined level
+     * @param level 0 for bottom, 1 for first level, 2 for middle, 3 for top
+     * @return height in encoder units
+     */
+    public static double getLevelHeight(int level) {
+        switch (level) {
+            case 0:
+                return LEVEL_0_HEIGHT;
+            case 1:
+                return LEVEL_1_HEIGHT;
+            case 2:
+                return LEVEL_2_HEIGHT;
+            case 3:
+                return LEVEL_3_HEIGHT;
+            default:
+                throw new IllegalArgumentException("Invalid level: " + level);
+        }
+    }
+
+    /**
+     * Estimates how long the elevator takes to travel between two heights, with a trapezoid profile
+     * at the elevator's maximum velocity and acceleration
+     * @param from Start height in encoder units
+     * @param to End height in encoder units
+     * @return travel time in seconds
+     */
+    public static double estimateTravelSeconds(double from, double to) {
+        double distance = Math.abs(to - from);
+        // distance needed to reach full speed and stop again
+        double rampDistance = MAX_VELOCITY * MAX_VELOCITY / MAX_ACCELERATION;
+        if (distance < rampDistance) {
+            return 2 * Math.sqrt(distance / MAX_ACCELERATION);
+        }
+        return distance / MAX_VELOCITY + MAX_VELOCITY / MAX_ACCELERATION;
+    }
+
     /**
      * Returns the current level of the elevator (0, 1, 2, or 3)
      * Returns -1 if between levels
@@ -377,105 +598,62 @@ public class ElevatorSubsystem extends SubsystemBase {
         }
     }
     
-    /**
-     * Get the filtered error between current and target position
-     */
-    private double getFilteredError() {
-        double error = targetPosition - getCurrentPosition();
-        return errorFilter.calculate(error);
-    }
-
     @Override
     public void periodic() {
-        // Safety checks - stop if either limit switch is triggered OR position exceeds thresholds
-        if (isAtTop() || getCurrentPosition() > TOP_THRESHOLD) {
-            if (primaryElevatorMotor.get() > 0) {
-                Logger.log("Elevator at top limit or exceeded threshold - STOPPING");
-                stop();
-            }
-        }
-        
-        if (isAtBottom() || getCurrentPosition() < BOTTOM_THRESHOLD) {
-            if (primaryElevatorMotor.get() < 0) {
-                Logger.log("Elevator at bottom limit or exceeded threshold - STOPPING");
-                stop();
-            }
+        // The interrupts already stopped the elevator on the switch edges, hold or recalibrate now
+        handleLimitEdges();
+
+        // Backup safety checks - stop if a switch is held or the position exceeds the thresholds
+        // while the target is further in that direction
+        if ((isAtTop() || getCurrentPosition() > TOP_THRESHOLD) && closedLoopActive && targetPosition > getCurrentPosition()) {
+            Logger.log("Elevator at top limit or exceeded threshold - STOPPING");
+            stop();
         }
         
-        // Auto-calibration logic when at bottom limit switch
-        boolean isBottomNow = isAtBottom();
-        
-        // Just arrived at bottom
-        if (isBottomNow && !wasAtBottom) {
-            bottomDwellTimer.reset();
-            bottomDwellTimer.start();
-        }
-        // Still at bottom, check if we should auto-calibrate
-        else if (isBottomNow && wasAtBottom) {
-            if (bottomDwellTimer.hasElapsed(AUTO_CALIBRATION_DWELL_TIME) && 
-                Math.abs(getCurrentPosition()) > 0.5) { // Only calibrate if position is off by more than 0.5
-                Logger.log("Auto-calibrating elevator after dwelling at bottom for " + 
-                           AUTO_CALIBRATION_DWELL_TIME + " seconds");
-                calibrateZeroPosition();
-                bottomDwellTimer.reset();
-            }
-        }
-        // No longer at bottom
-        else if (!isBottomNow && wasAtBottom) {
-            bottomDwellTimer.stop();
+        if ((isAtBottom() || getCurrentPosition() < BOTTOM_THRESHOLD) && closedLoopActive && targetPosition < getCurrentPosition()) {
+            Logger.log("Elevator at bottom limit or exceeded threshold - STOPPING");
+            stop();
         }
         
-        wasAtBottom = isBottomNow;
-        
-        // Handle torque mode transition
-        if (inTorqueMode) {
-            // Debug information for torque mode
-            double currentPosition = getCurrentPosition();
-            double currentError = targetPosition - currentPosition;
-            double filteredError = getFilteredError();
-            double torqueTime = torqueModeTimer.get();
-            double motorOutput = primaryElevatorMotor.get();
-            double primaryVelocity = encoder.getVelocity();
-            double secondaryVelocity = secondaryElevatorMotor.getEncoder().getVelocity();
-            
-            Logger.logf(
-                "TORQUE_MODE_DEBUG - Time: %.3fs, Pos: %.2f, Target: %.2f, Error: %.2f, Filtered: %.2f, Output: %.2f, P1 Vel: %.2f, P2 Vel: %.2f, P1 Voltage: %.2f, P2 Voltage: %.2f",
-                torqueTime, currentPosition, targetPosition, currentError, filteredError, motorOutput, 
-                primaryVelocity, secondaryVelocity,
-                primaryElevatorMotor.getBusVoltage(), secondaryElevatorMotor.getBusVoltage());
-            
-            // Check if we should exit torque mode based on timer
-            if (torqueModeTimer.get() >= TORQUE_TIMEOUT) {
-                Logger.log("Torque mode timeout - switching to PID control");
-                disableTorqueMode();
-            }
-            // Alternatively, exit torque mode if we're close to the target
-            else if (Math.abs(getFilteredError()) < TOLERANCE * 2) {
-                disableTorqueMode();
-            }
+        // Follow the profile to the target, and keep holding the target against gravity once there
+        if (closedLoopActive) {
+            followProfile();
+            updateTimeToSettle();
         }
         
         // Print periodic status every 50 calls (about once per second)
         if (periodicCounter++ % 50 == 0) {
-            Logger.logf("Elevator Status - Pos: %.2f, Target: %.2f, P1 Speed: %.2f, P1 Voltage: %.2f, P2 Speed: %.2f, P2 Voltage: %.2f, TorqueMode: %b",
-                getCurrentPosition(), targetPosition, 
-                primaryElevatorMotor.get(), primaryElevatorMotor.getBusVoltage(),
-                secondaryElevatorMotor.get(), secondaryElevatorMotor.getBusVoltage(), inTorqueMode);
+            Logger.logf("Elevator Status - Pos: %.2f, Target: %.2f, Setpoint: %.2f, P1 Speed: %.2f, P1 Voltage: %.2f, P2 Speed: %.2f, P2 Voltage: %.2f",
+                getCurrentPosition(), targetPosition, setpoint.position,
+                primaryElevatorMotor.getAppliedOutput(), primaryElevatorMotor.getBusVoltage(),
+                secondaryElevatorMotor.getAppliedOutput(), secondaryElevatorMotor.getBusVoltage());
         }
         
+        motors.checkDivergence();
         updateTelemetry();
-        
-        // Update simulation
-        if (RobotBase.isSimulation()) {
-            updateSimulatorState();
-        }
     }
 
-    public void updateSimulatorState() {
-        double positionError = targetPosition - encoder.getPosition();
-        double velocityInchPerSec = positionError / 0.02;  // Basic simulation
-        primaryElevatorMotorSim.iterate(velocityInchPerSec, primaryElevatorMotor.getBusVoltage(), 0.02);
-        secondaryElevatorMotorSim.iterate(velocityInchPerSec, secondaryElevatorMotor.getBusVoltage(), 0.02);
+    /**
+     * Moves the simulated carriage with the voltage the primary motor controller applies, the
+     * secondary motor follows it with the same output
+     */
+    @Override
+    public void simulationPeriodic() {
+        double busVoltage = RoboRioSim.getVInVoltage();
+        elevatorSim.setInput(primaryElevatorMotorSim.getAppliedOutput() * busVoltage);
+        elevatorSim.update(0.02);
+
+        // the encoders report motor rotations per minute
+        double motorRpm = elevatorSim.getVelocityMetersPerSecond() * ElevatorConstants.ROTATIONS_PER_METER * 60;
+        primaryElevatorMotorSim.iterate(motorRpm, busVoltage, 0.02);
+        secondaryElevatorMotorSim.iterate(motorRpm, busVoltage, 0.02);
+        updateLimitSwitchSims();
+    }
+
+    private void updateLimitSwitchSims() {
+        // limit switches are active LOW
+        topLimitSwitchSim.setValue(!elevatorSim.hasHitUpperLimit());
+        bottomLimitSwitchSim.setValue(!elevatorSim.hasHitLowerLimit());
     }
 
     private void updateTelemetry() {
@@ -485,15 +663,16 @@ public class ElevatorSubsystem extends SubsystemBase {
         SmartDashboard.putBoolean("Elevator/AtTop", isAtTop());
         SmartDashboard.putBoolean("Elevator/AtBottom", isAtBottom());
         SmartDashboard.putBoolean("Elevator/AtTarget", atTargetPosition());
-        SmartDashboard.putBoolean("Elevator/TorqueMode", inTorqueMode);
-        SmartDashboard.putNumber("Elevator/FilteredError", getFilteredError());
+        SmartDashboard.putNumber("Elevator/Setpoint", setpoint.position);
+        SmartDashboard.putNumber("Elevator/SetpointVelocity", setpoint.velocity);
+        SmartDashboard.putNumber("Elevator/Velocity", getVelocity());
         
         SmartDashboard.putNumber("Elevator/Primary/Current", primaryElevatorMotor.getOutputCurrent());
         SmartDashboard.putNumber("Elevator/Primary/Voltage", primaryElevatorMotor.getBusVoltage());
-        SmartDashboard.putNumber("Elevator/Primary/Speed", primaryElevatorMotor.get());
+        SmartDashboard.putNumber("Elevator/Primary/Speed", primaryElevatorMotor.getAppliedOutput());
         
         SmartDashboard.putNumber("Elevator/Secondary/Current", secondaryElevatorMotor.getOutputCurrent());
         SmartDashboard.putNumber("Elevator/Secondary/Voltage", secondaryElevatorMotor.getBusVoltage());
-        SmartDashboard.putNumber("Elevator/Secondary/Speed", secondaryElevatorMotor.get());
+        SmartDashboard.putNumber("Elevator/Secondary/Speed", secondaryElevatorMotor.getAppliedOutput());
     }
 }
\ No newline at end of file
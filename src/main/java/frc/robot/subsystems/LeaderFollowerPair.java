@@ -0,0 +1,152 @@
+package frc.robot.subsystems;
+
+import com.revrobotics.spark.ClosedLoopSlot;
+import com.revrobotics.spark.SparkBase.ControlType;
+import com.revrobotics.spark.SparkBase.PersistMode;
+import com.revrobotics.spark.SparkBase.ResetMode;
+import com.revrobotics.spark.SparkClosedLoopController.ArbFFUnits;
+import com.revrobotics.spark.SparkMax;
+import com.revrobotics.spark.config.SparkMaxConfig;
+
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.util.Logger;
+
+/**
+ * Two motors driving one mechanism. The follower is configured to follow the leader in hardware,
+ * so every command is sent to the leader only and the follower applies the same output on the
+ * next frame, which keeps both motors sharing the load with half the CAN writes.
+ * The pair watches for a follower that no longer draws the current or turns at the speed of the
+ * leader, from a lost follower configuration, a brownout or a mechanical problem, and reports it.
+ */
+public class LeaderFollowerPair {
+    // how long the motors have to disagree before it is reported
+    private static final double DIVERGENCE_DEBOUNCE_SECONDS = 0.25;
+
+    private final String name;
+    private final SparkMax leader;
+    private final SparkMax follower;
+    private final boolean followerInverted;
+    private final double currentToleranceAmps;
+    private final double velocityTolerance;
+
+    private final Debouncer divergenceDebouncer = new Debouncer(DIVERGENCE_DEBOUNCE_SECONDS);
+    private boolean diverged = false;
+    // the follower is commanded on its own, see setIndependent
+    private boolean independent = false;
+
+    /**
+     * Configures both motors, the follower with its own current limit and idle mode but following
+     * the leader
+     * @param name Name for logs and telemetry
+     * @param followerInverted Whether the follower turns against the leader
+     * @param currentToleranceAmps Current difference between the motors that counts as diverged
+     * @param velocityTolerance Velocity difference that counts as diverged, in encoder units
+     */
+    public LeaderFollowerPair(String name, SparkMax leader, SparkMaxConfig leaderConfig,
+            SparkMax follower, SparkMaxConfig followerConfig, boolean followerInverted,
+            double currentToleranceAmps, double velocityTolerance) {
+        this.name = name;
+        this.leader = leader;
+        this.follower = follower;
+        this.followerInverted = followerInverted;
+        this.currentToleranceAmps = currentToleranceAmps;
+        this.velocityTolerance = velocityTolerance;
+
+        leader.configure(leaderConfig, ResetMode.kResetSafeParameters, PersistMode.kPersistParameters);
+        followerConfig.follow(leader, followerInverted);
+        follower.configure(followerConfig, ResetMode.kResetSafeParameters, PersistMode.kPersistParameters);
+    }
+
+    public SparkMax getLeader() {
+        return leader;
+    }
+
+    public SparkMax getFollower() {
+        return follower;
+    }
+
+    /**
+     * @param output Duty cycle of both motors, -1 to 1
+     */
+    public void set(double output) {
+        follow();
+        leader.set(output);
+    }
+
+    public void setVoltage(double volts) {
+        follow();
+        leader.setVoltage(volts);
+    }
+
+    /**
+     * Sets a closed loop reference on the leader, with a feedforward voltage
+     */
+    public void setReference(double value, ControlType controlType, double feedforwardVolts) {
+        follow();
+        leader.getClosedLoopController().setReference(value, controlType, ClosedLoopSlot.kSlot0,
+            feedforwardVolts, ArbFFUnits.kVoltage);
+    }
+
+    public void stopMotor() {
+        follow();
+        leader.stopMotor();
+    }
+
+    /**
+     * Drives the motors with different outputs, for a mechanism that sometimes needs them apart.
+     * The follower stops following until the next command to the pair
+     * @param leaderOutput Duty cycle of the leader, -1 to 1
+     * @param followerOutput Duty cycle of the follower in its own direction, -1 to 1
+     */
+    public void setIndependent(double leaderOutput, double followerOutput) {
+        if (!independent) {
+            SparkMaxConfig config = new SparkMaxConfig();
+            config.disableFollowerMode();
+            follower.configureAsync(config, ResetMode.kNoResetSafeParameters, PersistMode.kNoPersistParameters);
+            independent = true;
+        }
+        leader.set(leaderOutput);
+        follower.set(followerOutput);
+    }
+
+    private void follow() {
+        if (independent) {
+            SparkMaxConfig config = new SparkMaxConfig();
+            config.follow(leader, followerInverted);
+            follower.configureAsync(config, ResetMode.kNoResetSafeParameters, PersistMode.kNoPersistParameters);
+            independent = false;
+        }
+    }
+
+    /**
+     * Compares the follower to the leader, call once per loop from the subsystem's periodic
+     */
+    public void checkDivergence() {
+        double currentDifference = Math.abs(leader.getOutputCurrent() - follower.getOutputCurrent());
+        // the follower's encoder turns the other way when it is inverted
+        double velocityDifference = Math.abs(Math.abs(leader.getEncoder().getVelocity())
+            - Math.abs(follower.getEncoder().getVelocity()));
+        boolean disagree = !independent
+            && (currentDifference > currentToleranceAmps || velocityDifference > velocityTolerance);
+        boolean nowDiverged = divergenceDebouncer.calculate(disagree);
+        if (nowDiverged && !diverged) {
+            Logger.logf("%s follower diverged from the leader: %.1f A and %.0f apart, following %b",
+                name, currentDifference, velocityDifference, follower.isFollower());
+        } else if (!nowDiverged && diverged) {
+            Logger.log(name + " follower is back with the leader");
+        }
+        diverged = nowDiverged;
+
+        SmartDashboard.putBoolean(name + "/Follower diverged", diverged);
+        SmartDashboard.putNumber(name + "/Follower current difference", currentDifference);
+        SmartDashboard.putNumber(name + "/Follower velocity difference", velocityDifference);
+    }
+
+    /**
+     * @return true while the follower does not match the leader
+     */
+    public boolean isDiverged() {
+        return diverged;
+    }
+}
@@ -9,12 +9,11 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.util.WPIUtilJNI;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.LimelightConstants;
 
-public class LimelightSubsystem extends SubsystemBase {
+public class LimelightSubsystem extends SubsystemBase implements VisionSource {
     private final NetworkTable m_limelightTable;
     private AprilTagFieldLayout aprilTagField = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
     private double millisTimeRecorded;
@@ -24,6 +23,9 @@ public class LimelightSubsystem extends SubsystemBase {
     private NetworkTableEntry ty;  // Vertical offset from crosshair to target
     private NetworkTableEntry ta;  // Target area (0% to 100% of image)
     private NetworkTableEntry tv;  // Whether the limelight has any valid targets (0 or 1)
+    private NetworkTableEntry tl;  // Pipeline latency in milliseconds
+    private NetworkTableEntry cl;  // Capture latency in milliseconds
+    private NetworkTableEntry hb;  // Heartbeat, increases once per frame
     
     public LimelightSubsystem() {
         m_limelightTable = NetworkTableInstance.getDefault().getTable("limelight");
@@ -33,6 +35,9 @@ public class LimelightSubsystem extends SubsystemBase {
         ty = m_limelightTable.getEntry("ty");
         ta = m_limelightTable.getEntry("ta");
         tv = m_limelightTable.getEntry("tv");
+        tl = m_limelightTable.getEntry("tl");
+        cl = m_limelightTable.getEntry("cl");
+        hb = m_limelightTable.getEntry("hb");
         
         // Set default pipeline
         setPipeline(0);
@@ -46,7 +51,9 @@ public class LimelightSubsystem extends SubsystemBase {
         double currentArea = ta.getDouble(0.0);
         double currentTarget = tv.getDouble(0.0);
 
-        millisTimeRecorded = WPIUtilJNI.now() * 1e-3;
+        // the heartbeat changes with every frame, so its last change is when the current frame was
+        // published (microseconds), and the frame was captured pipeline + capture latency before that
+        millisTimeRecorded = hb.getLastChange() * 1e-3 - tl.getDouble(0.0) - cl.getDouble(0.0);
         
         // You can also log these values to SmartDashboard for debugging
         SmartDashboard.putNumber("Limelight X", currentX);
@@ -144,7 +151,7 @@ public class LimelightSubsystem extends SubsystemBase {
         return m_limelightTable.getEntry("tv").getDouble(0.0) == 1;
     }
     
-    // get the timestamp of robot in miliseconds
+    // get the timestamp the current frame was captured in miliseconds
     public double getTimeRecordedInMilis() {
         return millisTimeRecorded;
     }
@@ -153,6 +160,24 @@ public class LimelightSubsystem extends SubsystemBase {
         double heightDiff = tagHeight - LimelightConstants.kCameraToRobot.getZ();
         return heightDiff / Math.tan(Math.toRadians(-getX()));
     }
+    /**
+     * Position of the target tag relative to the robot center, in robot coordinates, straight from
+     * tx, ty and the tag height. Does not depend on the robot heading or pose.
+     * @return the tag position, or null if no known tag is in view
+     */
+    public synchronized Translation2d getTagTranslation() {
+        if (!isTargetValid()) {
+            return null;
+        }
+        Pose3d tag = aprilTagField.getTagPose(getTargetID()).orElse(null);
+        if (tag == null) {
+            return null;
+        }
+        double distance = getDistanceFromTag(tag.getZ(), -getX());
+        Translation2d cameraToTag = new Translation2d(distance, Rotation2d.fromDegrees(-getY()));
+        return LimelightConstants.kCameraToRobot.toTranslation2d().plus(cameraToTag);
+    }
+
     /*
      * If it detects an AprilTag ID, get it's pose to estimate the robot location with tx, ty, heightDiff
      */
@@ -0,0 +1,385 @@
+package frc.robot.subsystems;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagDetection;
+import edu.wpi.first.apriltag.AprilTagDetector;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.apriltag.AprilTagPoseEstimator;
+import edu.wpi.first.cameraserver.CameraServer;
+import edu.wpi.first.cscore.CvSink;
+import edu.wpi.first.cscore.OpenCvLoader;
+import edu.wpi.first.cscore.UsbCamera;
+import edu.wpi.first.math.geometry.CoordinateSystem;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.OnboardVisionConstants;
+import frc.robot.util.Logger;
+
+/**
+ * Fallback vision source that runs WPILib's AprilTag detector on the roboRIO.
+ * Frames come from a USB camera or from a directory of recorded images. Frames are handed to a
+ * bounded worker pool and dropped when the pool is saturated, so the detector never falls behind
+ * the camera. When the robot pose is known the detector only looks at the part of the frame where
+ * tags are predicted to be.
+ */
+public class OnboardAprilTagVision extends SubsystemBase implements VisionSource {
+    /**
+     * A single tag seen by the camera, camera relative in robot axes (x forward, y left, z up)
+     */
+    private static final class Observation {
+        final int tagId;
+        final Translation3d cameraToTag;
+        final double timestampMillis;
+
+        Observation(int tagId, Translation3d cameraToTag, double timestampMillis) {
+            this.tagId = tagId;
+            this.cameraToTag = cameraToTag;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+
+    /**
+     * Something that produces grayscale frames
+     */
+    private interface FrameSource {
+        /**
+         * Fills the frame with the next grayscale image
+         * @return capture time in microseconds (FPGA time), or 0 if there is no frame
+         */
+        long grab(Mat grayFrame) throws InterruptedException;
+    }
+
+    private final AprilTagFieldLayout aprilTagField = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
+    private final Supplier<Pose2d> poseSupplier;
+    private final FrameSource frameSource;
+    private final ThreadPoolExecutor workers;
+    private final ThreadLocal<AprilTagDetector> detectors = ThreadLocal.withInitial(OnboardAprilTagVision::createDetector);
+    private final Thread captureThread;
+
+    private final AtomicReference<Observation> latestObservation = new AtomicReference<>();
+    // Pose used for ROI prediction, copied on the main loop so worker threads never touch the estimator
+    private volatile Pose2d predictedPose;
+    private volatile double lastDetectionSeconds = Double.NEGATIVE_INFINITY;
+
+    // Statistics
+    private final AtomicLong framesCaptured = new AtomicLong();
+    private final AtomicLong framesProcessed = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesCropped = new AtomicLong();
+    private final AtomicLong processingMicros = new AtomicLong();
+
+    public OnboardAprilTagVision(Supplier<Pose2d> poseSupplier) {
+        this.poseSupplier = poseSupplier;
+
+        String framesDirectory = OnboardVisionConstants.RECORDED_FRAMES_DIRECTORY;
+        if (framesDirectory.isEmpty()) {
+            frameSource = createCameraSource();
+        } else {
+            frameSource = createDirectorySource(new File(framesDirectory));
+        }
+
+        workers = new ThreadPoolExecutor(
+            OnboardVisionConstants.WORKER_THREADS,
+            OnboardVisionConstants.WORKER_THREADS,
+            0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(OnboardVisionConstants.MAX_QUEUED_FRAMES),
+            runnable -> {
+                Thread thread = new Thread(runnable, "OnboardVisionWorker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        captureThread = new Thread(this::captureLoop, "OnboardVisionCapture");
+        captureThread.setDaemon(true);
+        captureThread.start();
+
+        Logger.log("Onboard AprilTag vision started with " + OnboardVisionConstants.WORKER_THREADS + " workers");
+    }
+
+    /**
+     * Creates a detector with the settings used on the robot. Detectors are not thread safe, so every
+     * worker gets its own.
+     */
+    public static AprilTagDetector createDetector() {
+        AprilTagDetector detector = new AprilTagDetector();
+        detector.addFamily("tag36h11");
+        AprilTagDetector.Config config = detector.getConfig();
+        // Parallelism comes from the worker pool, not from inside the detector
+        config.numThreads = 1;
+        config.quadDecimate = 2.0f;
+        detector.setConfig(config);
+        return detector;
+    }
+
+    private static FrameSource createCameraSource() {
+        UsbCamera camera = CameraServer.startAutomaticCapture(OnboardVisionConstants.USB_CAMERA_INDEX);
+        camera.setResolution(OnboardVisionConstants.FRAME_WIDTH, OnboardVisionConstants.FRAME_HEIGHT);
+        CvSink sink = CameraServer.getVideo(camera);
+        Mat colorFrame = new Mat();
+        return grayFrame -> {
+            long timestamp = sink.grabFrame(colorFrame, 0.5);
+            if (timestamp == 0) {
+                return 0;
+            }
+            Imgproc.cvtColor(colorFrame, grayFrame, Imgproc.COLOR_BGR2GRAY);
+            return timestamp;
+        };
+    }
+
+    private static FrameSource createDirectorySource(File directory) {
+        // Loading frames from disk needs OpenCV, which the camera server would otherwise load for us
+        try {
+            OpenCvLoader.forceLoad();
+        } catch (Exception e) {
+            Logger.error("Could not load OpenCV for recorded frames: " + e.getMessage());
+        }
+        File[] files = listRecordedFrames(directory);
+        Logger.log("Replaying " + files.length + " recorded frames from " + directory);
+        long[] nextFrame = {0};
+        return grayFrame -> {
+            if (files.length == 0) {
+                Thread.sleep(1000);
+                return 0;
+            }
+            // Replay at roughly camera rate
+            Thread.sleep(33);
+            Mat image = Imgcodecs.imread(files[(int) (nextFrame[0]++ % files.length)].getPath(), Imgcodecs.IMREAD_GRAYSCALE);
+            image.copyTo(grayFrame);
+            image.release();
+            return grayFrame.empty() ? 0 : WPIUtilJNI.now();
+        };
+    }
+
+    /**
+     * @return the recorded image files in a directory, in name order
+     */
+    public static File[] listRecordedFrames(File directory) {
+        File[] files = directory.listFiles((dir, name) -> {
+            String lower = name.toLowerCase();
+            return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg");
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private void captureLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Mat frame = new Mat();
+            long timestampMicros;
+            try {
+                timestampMicros = frameSource.grab(frame);
+            } catch (InterruptedException e) {
+                frame.release();
+                return;
+            }
+            if (timestampMicros == 0) {
+                frame.release();
+                continue;
+            }
+            framesCaptured.incrementAndGet();
+
+            // Drop the frame instead of queueing it behind older ones when the workers are saturated
+            if (workers.getQueue().remainingCapacity() == 0) {
+                framesDropped.incrementAndGet();
+                frame.release();
+                continue;
+            }
+
+            Rect roi = predictRegionOfInterest(predictedPose);
+            try {
+                workers.execute(() -> processFrame(frame, timestampMicros, roi));
+            } catch (RejectedExecutionException e) {
+                framesDropped.incrementAndGet();
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * Projects every field tag through the camera to find where in the frame tags should appear
+     * @return the region containing all predicted tags, or null to search the full frame
+     */
+    private Rect predictRegionOfInterest(Pose2d robotPose) {
+        double now = WPIUtilJNI.now() * 1e-6;
+        if (robotPose == null || now - lastDetectionSeconds > OnboardVisionConstants.ROI_TIMEOUT_SECONDS) {
+            return null;
+        }
+
+        Translation3d cameraOffset = OnboardVisionConstants.ROBOT_TO_CAMERA;
+        Translation2d cameraPosition = robotPose.getTranslation()
+            .plus(cameraOffset.toTranslation2d().rotateBy(robotPose.getRotation()));
+
+        double minU = Double.MAX_VALUE;
+        double minV = Double.MAX_VALUE;
+        double maxU = -Double.MAX_VALUE;
+        double maxV = -Double.MAX_VALUE;
+        for (AprilTag tag : aprilTagField.getTags()) {
+            Translation2d relative = tag.pose.toPose2d().getTranslation()
+                .minus(cameraPosition)
+                .rotateBy(robotPose.getRotation().unaryMinus());
+            double forward = relative.getX();
+            if (forward < 0.2 || forward > OnboardVisionConstants.MAX_TAG_DISTANCE_METERS) {
+                continue;
+            }
+            double up = tag.pose.getZ() - cameraOffset.getZ();
+            double u = OnboardVisionConstants.CX - OnboardVisionConstants.FX * relative.getY() / forward;
+            double v = OnboardVisionConstants.CY - OnboardVisionConstants.FY * up / forward;
+            double halfSize = OnboardVisionConstants.ROI_MARGIN
+                * OnboardVisionConstants.FX * OnboardVisionConstants.TAG_SIZE_METERS / forward / 2;
+            if (u + halfSize < 0 || u - halfSize > OnboardVisionConstants.FRAME_WIDTH
+                    || v + halfSize < 0 || v - halfSize > OnboardVisionConstants.FRAME_HEIGHT) {
+                continue;
+            }
+            minU = Math.min(minU, u - halfSize);
+            maxU = Math.max(maxU, u + halfSize);
+            minV = Math.min(minV, v - halfSize);
+            maxV = Math.max(maxV, v + halfSize);
+        }
+        if (minU > maxU) {
+            return null;
+        }
+
+        int x = (int) Math.max(0, minU);
+        int y = (int) Math.max(0, minV);
+        int width = (int) Math.min(OnboardVisionConstants.FRAME_WIDTH, maxU) - x;
+        int height = (int) Math.min(OnboardVisionConstants.FRAME_HEIGHT, maxV) - y;
+        // Not worth cropping if the region is most of the frame
+        if (width <= 0 || height <= 0
+                || width * height > 0.75 * OnboardVisionConstants.FRAME_WIDTH * OnboardVisionConstants.FRAME_HEIGHT) {
+            return null;
+        }
+        return new Rect(x, y, width, height);
+    }
+
+    private void processFrame(Mat grayFrame, long timestampMicros, Rect roi) {
+        long startMicros = WPIUtilJNI.now();
+        Mat view = grayFrame;
+        try {
+            // The ROI might not fit a frame of a different size (recorded images)
+            if (roi != null && roi.x + roi.width <= grayFrame.cols() && roi.y + roi.height <= grayFrame.rows()) {
+                view = grayFrame.submat(roi);
+                framesCropped.incrementAndGet();
+            } else {
+                roi = null;
+            }
+
+            AprilTagDetection[] detections = detectors.get().detect(view);
+
+            // Shift the principal point so poses from the cropped image are still correct
+            double offsetX = roi == null ? 0 : roi.x;
+            double offsetY = roi == null ? 0 : roi.y;
+            AprilTagPoseEstimator poseEstimator = new AprilTagPoseEstimator(new AprilTagPoseEstimator.Config(
+                OnboardVisionConstants.TAG_SIZE_METERS,
+                OnboardVisionConstants.FX, OnboardVisionConstants.FY,
+                OnboardVisionConstants.CX - offsetX, OnboardVisionConstants.CY - offsetY));
+
+            // Keep the closest tag, it gives the most accurate estimate
+            Observation best = null;
+            for (AprilTagDetection detection : detections) {
+                if (detection.getDecisionMargin() < OnboardVisionConstants.MIN_DECISION_MARGIN
+                        || aprilTagField.getTagPose(detection.getId()).isEmpty()) {
+                    continue;
+                }
+                Transform3d cameraToTag = CoordinateSystem.convert(
+                    poseEstimator.estimate(detection), CoordinateSystem.EDN(), CoordinateSystem.NWU());
+                double distance = cameraToTag.getTranslation().getNorm();
+                if (distance > OnboardVisionConstants.MAX_TAG_DISTANCE_METERS) {
+                    continue;
+                }
+                if (best == null || distance < best.cameraToTag.getNorm()) {
+                    best = new Observation(detection.getId(), cameraToTag.getTranslation(), timestampMicros * 1e-3);
+                }
+            }
+
+            if (best != null) {
+                lastDetectionSeconds = timestampMicros * 1e-6;
+                // Workers can finish out of order, never replace a newer observation with an older one
+                latestObservation.accumulateAndGet(best, (current, next) ->
+                    current == null || next.timestampMillis > current.timestampMillis ? next : current);
+            }
+        } catch (Exception e) {
+            Logger.error("Onboard AprilTag detection failed: " + e.getMessage());
+        } finally {
+            if (view != grayFrame) {
+                view.release();
+            }
+            grayFrame.release();
+            processingMicros.addAndGet(WPIUtilJNI.now() - startMicros);
+            framesProcessed.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void periodic() {
+        predictedPose = poseSupplier.get();
+
+        long processed = framesProcessed.get();
+        SmartDashboard.putBoolean("OnboardVision/Has Target", isTargetValid());
+        SmartDashboard.putNumber("OnboardVision/Frames Captured", framesCaptured.get());
+        SmartDashboard.putNumber("OnboardVision/Frames Processed", processed);
+        SmartDashboard.putNumber("OnboardVision/Frames Dropped", framesDropped.get());
+        SmartDashboard.putNumber("OnboardVision/Frames Cropped", framesCropped.get());
+        SmartDashboard.putNumber("OnboardVision/Avg Processing (ms)",
+            processed == 0 ? 0 : processingMicros.get() * 1e-3 / processed);
+    }
+
+    @Override
+    public boolean isTargetValid() {
+        Observation observation = latestObservation.get();
+        return observation != null
+            && WPIUtilJNI.now() * 1e-3 - observation.timestampMillis
+                < OnboardVisionConstants.MAX_OBSERVATION_AGE_SECONDS * 1000;
+    }
+
+    /*
+     * Same approach as the Limelight: the camera relative tag translation is rotated into the field
+     * with the gyro heading, which is more reliable than the single tag rotation estimate
+     */
+    @Override
+    public Pose2d getPose(Rotation2d robotRotation2d) {
+        Observation observation = latestObservation.get();
+        if (observation == null) {
+            return null;
+        }
+        Pose3d tag = aprilTagField.getTagPose(observation.tagId).orElse(null);
+        if (tag == null) {
+            return null;
+        }
+        Translation2d cameraToTag = observation.cameraToTag.toTranslation2d().rotateBy(robotRotation2d);
+        Translation2d cameraPosition = tag.toPose2d().getTranslation().minus(cameraToTag);
+        Translation2d offset = OnboardVisionConstants.ROBOT_TO_CAMERA.toTranslation2d().rotateBy(robotRotation2d);
+        return new Pose2d(cameraPosition.minus(offset), robotRotation2d);
+    }
+
+    @Override
+    public double getTimeRecordedInMilis() {
+        Observation observation = latestObservation.get();
+        return observation == null ? 0 : observation.timestampMillis;
+    }
+}
@@ -1,42 +1,89 @@
 package frc.robot.subsystems;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import edu.wpi.first.math.Vector;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.LatencyTracer;
 
 public class PoseEstimator extends SubsystemBase{
     private SwerveDrivePoseEstimator m_swerveEstimator;
     private DriveSubsystem m_driveSubsystem;
-    private LimelightSubsystem m_limelight;
-    private static final Vector<N3> stateStdDevs =
+    // vision sources in priority order, the limelight is always first
+    private final List<VisionSource> m_visionSources = new ArrayList<>();
+    // capture time of the last frame fused from each source, a frame is only fused once
+    private final Map<VisionSource, Double> m_lastFusedTimestamps = new HashMap<>();
+    // public so the offline replay tool can report the values currently on the robot
+    public static final Vector<N3> stateStdDevs =
       VecBuilder.fill(0.05, 0.05, Units.degreesToRadians(5));
-    private static final Vector<N3> visionMeasurementStdDevs =
+    public static final Vector<N3> visionMeasurementStdDevs =
       VecBuilder.fill(0.5, 0.5, Units.degreesToRadians(10));
 
+    // Raw estimator inputs, logged so the estimator can be replayed and tuned offline
+    // odometry: [gyro yaw (rad), then distance (m) and angle (rad) for each module]
+    public static final String ODOMETRY_LOG_ENTRY = "/replay/odometry";
+    // vision: [x (m), y (m), rotation (rad), capture timestamp (s), source index]
+    public static final String VISION_LOG_ENTRY = "/replay/vision";
+    // estimate: [x (m), y (m), rotation (rad)]
+    public static final String ESTIMATE_LOG_ENTRY = "/replay/estimate";
+    // reset: [x (m), y (m), rotation (rad)] of the pose the estimator was reset to
+    public static final String RESET_LOG_ENTRY = "/replay/reset";
+    private final DoubleArrayLogEntry m_odometryLog;
+    private final DoubleArrayLogEntry m_visionLog;
+    private final DoubleArrayLogEntry m_estimateLog;
+    private final DoubleArrayLogEntry m_resetLog;
+    // capture time of the newest fused vision frame that no command has read the pose since
+    private double m_unreadVisionTimestamp = Double.NaN;
+
      public PoseEstimator(DriveSubsystem drive, LimelightSubsystem limelight) {
         m_driveSubsystem = drive;
-        m_limelight = limelight;
+        m_visionSources.add(limelight);
         m_swerveEstimator =
             new SwerveDrivePoseEstimator(
-                m_driveSubsystem.getDriveKinematics(), 
-                m_driveSubsystem.getHeading(), 
-                m_driveSubsystem.getModulePositions(), 
-                new Pose2d(), 
-                stateStdDevs, 
+                m_driveSubsystem.getDriveKinematics(),
+                m_driveSubsystem.getHeading(),
+                m_driveSubsystem.getModulePositions(),
+                new Pose2d(),
+                stateStdDevs,
                 visionMeasurementStdDevs);
+
+        DataLog log = DataLogManager.getLog();
+        m_odometryLog = new DoubleArrayLogEntry(log, ODOMETRY_LOG_ENTRY);
+        m_visionLog = new DoubleArrayLogEntry(log, VISION_LOG_ENTRY);
+        m_estimateLog = new DoubleArrayLogEntry(log, ESTIMATE_LOG_ENTRY);
+        m_resetLog = new DoubleArrayLogEntry(log, RESET_LOG_ENTRY);
+    }
+
+    /**
+     * Adds another source of vision measurements, for example the on-RIO AprilTag fallback
+     */
+    public void addVisionSource(VisionSource source) {
+        m_visionSources.add(source);
     }
 
     public Pose2d getPose2d() {
+        LatencyTracer.recordSince(LatencyTracer.CAMERA_TO_POSE_USE, m_unreadVisionTimestamp);
+        m_unreadVisionTimestamp = Double.NaN;
         return m_swerveEstimator.getEstimatedPosition();
     }
 
     public void setCurrentPose(Pose2d pose) {
         m_swerveEstimator.resetPosition(
             m_driveSubsystem.getHeading(), m_driveSubsystem.getModulePositions(), pose);
+        m_resetLog.append(new double[] {pose.getX(), pose.getY(), pose.getRotation().getRadians()});
     }
 
     public void resetFieldPosition() {
@@ -44,13 +91,55 @@ public class PoseEstimator extends SubsystemBase{
     }
     @Override
     public void periodic() {
-        if (m_limelight.isTargetValid()) {
-        Pose2d visionMeasurement = m_limelight.getPose(m_driveSubsystem.getGyroRotation());
-        double resultTimestamp = m_limelight.getTimeRecordedInMilis();
-        m_swerveEstimator.addVisionMeasurement(visionMeasurement, resultTimestamp);
+        // only frames fused this loop, an unread older frame keeps its stamp until getPose2d reads it
+        double newestVisionTimestamp = Double.NaN;
+        for (int i = 0; i < m_visionSources.size(); i++) {
+            VisionSource source = m_visionSources.get(i);
+            if (!source.isTargetValid()) {
+                continue;
+            }
+            // the estimator expects FPGA time in seconds
+            double resultTimestamp = source.getTimeRecordedInMilis() / 1000.0;
+            Double lastFusedTimestamp = m_lastFusedTimestamps.get(source);
+            if (lastFusedTimestamp != null && resultTimestamp == lastFusedTimestamp) {
+                // no new frame since the last loop
+                continue;
+            }
+            Pose2d visionMeasurement = source.getPose(m_driveSubsystem.getGyroRotation());
+            if (visionMeasurement == null) {
+                continue;
+            }
+            m_lastFusedTimestamps.put(source, resultTimestamp);
+            m_swerveEstimator.addVisionMeasurement(visionMeasurement, resultTimestamp);
+            LatencyTracer.recordSince(LatencyTracer.CAMERA_TO_FUSION, resultTimestamp);
+            if (Double.isNaN(newestVisionTimestamp) || resultTimestamp > newestVisionTimestamp) {
+                newestVisionTimestamp = resultTimestamp;
+            }
+            m_visionLog.append(new double[] {
+                visionMeasurement.getX(), visionMeasurement.getY(),
+                visionMeasurement.getRotation().getRadians(), resultTimestamp, i});
+        }
+
+        Rotation2d heading = m_driveSubsystem.getHeading();
+        SwerveModulePosition[] modulePositions = m_driveSubsystem.getModulePositions();
+        m_swerveEstimator.update(heading, modulePositions);
+        logOdometry(heading, modulePositions);
+        if (!Double.isNaN(newestVisionTimestamp)) {
+            m_unreadVisionTimestamp = newestVisionTimestamp;
+        }
+    }
+
+    private void logOdometry(Rotation2d heading, SwerveModulePosition[] modulePositions) {
+        double[] odometry = new double[1 + 2 * modulePositions.length];
+        odometry[0] = heading.getRadians();
+        for (int i = 0; i < modulePositions.length; i++) {
+            odometry[1 + 2 * i] = modulePositions[i].distanceMeters;
+            odometry[2 + 2 * i] = modulePositions[i].angle.getRadians();
         }
+        m_odometryLog.append(odometry);
 
-        m_swerveEstimator.update(
-            m_driveSubsystem.getHeading(), m_driveSubsystem.getModulePositions());
+        // read from the estimator directly, logging is not a use of the pose
+        Pose2d estimate = m_swerveEstimator.getEstimatedPosition();
+        m_estimateLog.append(new double[] {estimate.getX(), estimate.getY(), estimate.getRotation().getRadians()});
     }
 }
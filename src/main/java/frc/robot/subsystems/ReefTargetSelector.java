@@ -0,0 +1,200 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.util.FlippingUtil;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants;
+import frc.robot.Constants.TargetSelectionConstants;
+
+/**
+ * Ranks every reef branch and level by the estimated time to score there, so the best target is
+ * known before the driver asks for it.
+ *
+ * The estimate is the drive time (the longer of the path along the grid pathfinder's cost-to-go and
+ * the rotation, both as trapezoid profiles) plus the part of the elevator travel that does not
+ * overlap with the final approach. The drive estimates of all branches are only recomputed when the
+ * robot moved, the elevator estimates of all levels only when the elevator moved, and combining
+ * them is a few additions per target every cycle.
+ *
+ * Targets are kept in blue alliance coordinates, on the red alliance the robot pose is flipped into
+ * the blue frame instead, and the chosen target is flipped back.
+ */
+public class ReefTargetSelector extends SubsystemBase {
+    /**
+     * A branch and the level to score it at
+     */
+    public static final class Target {
+        public final Pose2d bluePose;
+        public final boolean rightBranch;
+        public final int level;
+
+        Target(Pose2d bluePose, boolean rightBranch, int level) {
+            this.bluePose = bluePose;
+            this.rightBranch = rightBranch;
+            this.level = level;
+        }
+
+        /**
+         * @return the pose to drive to on the current alliance
+         */
+        public Pose2d getPose() {
+            return DriveSubsystem.shouldFlipPath() ? FlippingUtil.flipFieldPose(bluePose) : bluePose;
+        }
+
+        @Override
+        public String toString() {
+            return (rightBranch ? "right" : "left") + " branch at " + bluePose.getTranslation() + ", level " + level;
+        }
+    }
+
+    private final DriveSubsystem drive;
+    private final ElevatorSubsystem elevator;
+
+    private final Pose2d[] branches;
+    private final boolean[] rightBranch;
+    private final int[] goalIndices;
+    private final List<Target> targets = new ArrayList<>();
+
+    // cached parts of the estimate
+    private final double[] driveSeconds;
+    private final double[] elevatorSeconds;
+    private final double[] timeToScore;
+    private Pose2d lastBluePose = null;
+    private double lastElevatorPosition = Double.NaN;
+    private int bestIndex = 0;
+
+    public ReefTargetSelector(DriveSubsystem drive, ElevatorSubsystem elevator) {
+        this.drive = drive;
+        this.elevator = elevator;
+
+        Pose2d[] left = Constants.Locations.leftBranchLocations;
+        Pose2d[] right = Constants.Locations.rightBranchLocations;
+        branches = new Pose2d[left.length + right.length];
+        rightBranch = new boolean[branches.length];
+        for (int i = 0; i < left.length; i++) {
+            branches[i] = left[i];
+        }
+        for (int i = 0; i < right.length; i++) {
+            branches[left.length + i] = right[i];
+            rightBranch[left.length + i] = true;
+        }
+        goalIndices = new int[branches.length];
+        for (int i = 0; i < branches.length; i++) {
+            Pose2d branch = branches[i];
+            goalIndices[i] = drive.getPathfinder().map(pathfinder -> pathfinder.getGoalIndex(branch)).orElse(-1);
+        }
+
+        // targets are ordered branch by branch, level by level
+        for (int branch = 0; branch < branches.length; branch++) {
+            for (int level : TargetSelectionConstants.SCORING_LEVELS) {
+                targets.add(new Target(branches[branch], rightBranch[branch], level));
+            }
+        }
+        driveSeconds = new double[branches.length];
+        elevatorSeconds = new double[TargetSelectionConstants.SCORING_LEVELS.length];
+        timeToScore = new double[targets.size()];
+    }
+
+    @Override
+    public void periodic() {
+        Pose2d pose = drive.getPose();
+        Pose2d bluePose = DriveSubsystem.shouldFlipPath() ? FlippingUtil.flipFieldPose(pose) : pose;
+        if (lastBluePose == null
+                || lastBluePose.getTranslation().getDistance(bluePose.getTranslation()) > TargetSelectionConstants.POSE_UPDATE_DISTANCE_METERS
+                || Math.abs(lastBluePose.getRotation().minus(bluePose.getRotation()).getRadians()) > TargetSelectionConstants.POSE_UPDATE_ANGLE_RADIANS) {
+            updateDriveEstimates(bluePose);
+            lastBluePose = bluePose;
+        }
+
+        double elevatorPosition = elevator.getCurrentPosition();
+        if (Double.isNaN(lastElevatorPosition) || Math.abs(elevatorPosition - lastElevatorPosition) > 0.1) {
+            int[] levels = TargetSelectionConstants.SCORING_LEVELS;
+            for (int i = 0; i < levels.length; i++) {
+                elevatorSeconds[i] = ElevatorSubsystem.estimateTravelSeconds(
+                    elevatorPosition, ElevatorSubsystem.getLevelHeight(levels[i]));
+            }
+            lastElevatorPosition = elevatorPosition;
+        }
+
+        int levelCount = TargetSelectionConstants.SCORING_LEVELS.length;
+        bestIndex = 0;
+        for (int i = 0; i < timeToScore.length; i++) {
+            double elevatorWait = Math.max(0, elevatorSeconds[i % levelCount] - TargetSelectionConstants.ELEVATOR_OVERLAP_SECONDS);
+            timeToScore[i] = driveSeconds[i / levelCount] + elevatorWait;
+            if (timeToScore[i] < timeToScore[bestIndex]) {
+                bestIndex = i;
+            }
+        }
+
+        SmartDashboard.putString("TargetSelector/Best", targets.get(bestIndex).toString());
+        SmartDashboard.putNumber("TargetSelector/Best time to score (s)", timeToScore[bestIndex]);
+    }
+
+    private void updateDriveEstimates(Pose2d bluePose) {
+        PathConstraints constraints = drive.getPathConstraints();
+        for (int i = 0; i < branches.length; i++) {
+            int goalIndex = goalIndices[i];
+            double pathLength = goalIndex >= 0
+                ? drive.getPathfinder().get().estimatePathLength(bluePose.getTranslation(), goalIndex)
+                : bluePose.getTranslation().getDistance(branches[i].getTranslation());
+            double rotation = Math.abs(branches[i].getRotation().minus(bluePose.getRotation()).getRadians());
+            driveSeconds[i] = Math.max(
+                profileSeconds(pathLength, constraints.maxVelocityMPS(), constraints.maxAccelerationMPSSq()),
+                profileSeconds(rotation, constraints.maxAngularVelocityRadPerSec(), constraints.maxAngularAccelerationRadPerSecSq()));
+        }
+    }
+
+    /**
+     * Time of a trapezoid profile from rest to rest
+     */
+    private static double profileSeconds(double distance, double maxVelocity, double maxAcceleration) {
+        if (distance < maxVelocity * maxVelocity / maxAcceleration) {
+            return 2 * Math.sqrt(distance / maxAcceleration);
+        }
+        return distance / maxVelocity + maxVelocity / maxAcceleration;
+    }
+
+    /**
+     * @return the target with the lowest estimated time to score
+     */
+    public Target getBestTarget() {
+        return targets.get(bestIndex);
+    }
+
+    /**
+     * @param level Elevator level to score at
+     * @return the target at that level with the lowest estimated time to score
+     */
+    public Target getBestTarget(int level) {
+        int best = -1;
+        for (int i = 0; i < targets.size(); i++) {
+            if (targets.get(i).level == level && (best < 0 || timeToScore[i] < timeToScore[best])) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            throw new IllegalArgumentException("Not a scoring level: " + level);
+        }
+        return targets.get(best);
+    }
+
+    /**
+     * @return every target, in the same order as {@link #getTimeToScore(int)}
+     */
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return the estimated time to score the target at an index of {@link #getTargets()}, in seconds
+     */
+    public double getTimeToScore(int index) {
+        return timeToScore[index];
+    }
+}
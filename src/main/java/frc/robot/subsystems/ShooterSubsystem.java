@@ -1,7 +1,6 @@
 package frc.robot.subsystems;
 
-import com.revrobotics.spark.SparkBase.PersistMode;
-import com.revrobotics.spark.SparkBase.ResetMode;
+import com.revrobotics.spark.SparkBase.ControlType;
 import com.revrobotics.spark.SparkLowLevel.MotorType;
 import com.revrobotics.spark.SparkMax;
 import com.revrobotics.spark.config.SparkMaxConfig;
@@ -13,6 +12,7 @@ import edu.wpi.first.wpilibj.I2C;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.NeoMotorConstants;
 import frc.robot.util.Logger;
 
 /**
@@ -24,36 +24,65 @@ public class ShooterSubsystem extends SubsystemBase {
         NO_CORAL,           // No coral in shooter, motors stopped
         READY_TO_INTAKE,    // Motors spinning at intake velocity, waiting for coral
         CORAL_INSIDE,       // Coral inside shooter, motors stopped
-        SHOOT_CORAL         // Shooting coral, motors at shooting velocity
+        SHOOT_CORAL         // Shooting coral, motors at shooting velocity until the coral is out
     }
 
     private final SparkMax leftMotor;
     private final SparkMax rightMotor;
+    // the right motor follows the left in hardware, except for the bottom level shot
+    private final LeaderFollowerPair motors;
     
-    // Color sensor for game piece detection
-    private ColorSensorV3 colorSensor;
+    // Color sensor for game piece detection, read on the sampler's thread
+    private ColorSensorSampler colorSensorSampler;
     private static final int PROXIMITY_THRESHOLD = 100; // Adjust based on testing
-    private int lastProximity = 0;
+    private static final double COLOR_SENSOR_PERIOD = 0.005; // seconds
+    private static final double COLOR_SENSOR_DEBOUNCE = 0.01; // seconds
     private boolean hasColorSensor = false;
+    // time of the last entry and exit edges already acted on
+    private double handledEnteredTimestamp = 0;
+    private double handledExitedTimestamp = 0;
+
+    // Coral detection from the motor current and velocity, the fallback without the color sensor
+    // and a second vote beside it
+    private CoralSignatureDetector signatureDetector;
+    private double handledSignatureEnteredTimestamp = 0;
+    private double handledSignatureExitedTimestamp = 0;
+    // state time the coral was detected in the current intake, NaN before
+    private double coralDetectedTime = Double.NaN;
+    // the sensor or the motors saw the coral leave during the current shot
+    private boolean coralExited = false;
+    // dashboard switch for logging intakes to calibrate the signature detector
+    private static final String CALIBRATE_SIGNATURE_KEY = "Shooter/Calibrate signature";
+    private static final double SIGNATURE_CALIBRATION_HOLD = 0.15; // seconds
 
     // State management
     private ShooterState currentState = ShooterState.NO_CORAL;
     private final Timer stateTimer = new Timer();
     private static final double INTAKE_TIMEOUT = 10; // seconds to wait for coral to be fully inside
+    private final ShotCompletionDetector shotDetector = new ShotCompletionDetector();
 
-    // Motor configuration constants
-    private static final double SHOOTING_POWER = 0.3; // 35% power for shooting
-    private static final double INTAKE_POWER = 0.35;   // 30% power for intake
-    private static final double FINE_TUNE_POWER = 0.2; // 15% power for fine tuning
+    // Wheel velocities in RPM, the speeds the motors reached at 30%, 35% and 20% power
+    private static final double SHOOTING_VELOCITY = 0.3 * NeoMotorConstants.FREE_SPEED_RPM;
+    private static final double INTAKE_VELOCITY = 0.35 * NeoMotorConstants.FREE_SPEED_RPM;
+    private static final double FINE_TUNE_VELOCITY = 0.2 * NeoMotorConstants.FREE_SPEED_RPM;
+    // The bottom level shot spins the motors apart, open loop
+    private static final double BOTTOM_LEVEL_LEFT_POWER = 0.15;
+    private static final double BOTTOM_LEVEL_RIGHT_POWER = 0.8;
     private static final int MAX_CURRENT = 40; // Amps
+    private static final double FOLLOWER_CURRENT_TOLERANCE = 10.0; // Amps
+    private static final double FOLLOWER_VELOCITY_TOLERANCE = 500.0; // RPM
     
-    // Keep these for reference but they're not used with open-loop control
-    private static final double kP = 1.5;
+    // Velocity loop, per RPM of error and per RPM of setpoint
+    private static final double kP = 0.0002;
     private static final double kI = 0.0;
     private static final double kD = 0.0;
-    private static final double kFF = 0.000175;
+    private static final double kFF = 1.0 / NeoMotorConstants.FREE_SPEED_RPM;
     
-    private static final double SHOOT_DURATION = 2.0; // seconds
+    // A shot that is not detected as complete ends after this long
+    public static final double SHOOT_DURATION = 2.0; // seconds
+    // How long a shot usually takes until the coral is out, for planning
+    public static final double EXPECTED_SHOT_SECONDS = 0.4;
+    private double targetVelocity = 0.0;
 
     public ShooterSubsystem(int leftMotorCanId, int rightMotorCanId) {
         leftMotor = new SparkMax(leftMotorCanId, MotorType.kBrushless);
@@ -61,7 +90,9 @@ public class ShooterSubsystem extends SubsystemBase {
 
         // Try to initialize color sensor on the I2C port
         try {
-            colorSensor = new ColorSensorV3(I2C.Port.kOnboard);
+            colorSensorSampler = new ColorSensorSampler(new ColorSensorV3(I2C.Port.kOnboard),
+                PROXIMITY_THRESHOLD, COLOR_SENSOR_PERIOD, COLOR_SENSOR_DEBOUNCE);
+            colorSensorSampler.start();
             hasColorSensor = true;
             Logger.log("Color sensor initialized successfully");
         } catch (Exception e) {
@@ -76,33 +107,36 @@ public class ShooterSubsystem extends SubsystemBase {
             .inverted(false)
             .smartCurrentLimit(MAX_CURRENT)
             .openLoopRampRate(0.05);     // Add ramp rate to smooth acceleration
+        // The coral detection reads the current and velocity every 5 ms, with a short velocity filter
+        leftConfig.signals
+            .outputCurrentPeriodMs(5)
+            .primaryEncoderVelocityPeriodMs(5);
+        leftConfig.encoder
+            .uvwMeasurementPeriod(8)
+            .uvwAverageDepth(2);
         
-        // Still configure PID in case we need it later, but we're not using it now
+        // Velocity loop of the pair, the right motor follows the left one's output
         leftConfig.closedLoop
             .feedbackSensor(FeedbackSensor.kPrimaryEncoder)
             .pid(kP, kI, kD)
             .velocityFF(kFF)
             .outputRange(-1, 1);
-            
-        leftMotor.configure(
-            leftConfig,
-            ResetMode.kResetSafeParameters,
-            PersistMode.kPersistParameters
-        );
-
-        // Configure the right motor (follower)
+
+        // Configure the right motor (follower), it faces the left one and turns the other way
         SparkMaxConfig rightConfig = new SparkMaxConfig();
         rightConfig
             .inverted(true)
             .idleMode(IdleMode.kCoast)
             .smartCurrentLimit(MAX_CURRENT)
             .openLoopRampRate(0.05);     // Add ramp rate to smooth acceleration
-            
-        rightMotor.configure(
-            rightConfig,
-            ResetMode.kResetSafeParameters,
-            PersistMode.kPersistParameters
-        );
+        rightConfig.signals
+            .outputCurrentPeriodMs(5);
+
+        motors = new LeaderFollowerPair("Shooter", leftMotor, leftConfig, rightMotor, rightConfig, true,
+            FOLLOWER_CURRENT_TOLERANCE, FOLLOWER_VELOCITY_TOLERANCE);
+        signatureDetector = new CoralSignatureDetector(leftMotor, rightMotor, colorSensorSampler);
+        signatureDetector.start();
+        SmartDashboard.putBoolean(CALIBRATE_SIGNATURE_KEY, false);
 
         // Initialize motors stopped
         stopMotors();
@@ -116,7 +150,10 @@ public class ShooterSubsystem extends SubsystemBase {
     public void prepareForIntake() {
         if (currentState == ShooterState.NO_CORAL) {
             Logger.log("Preparing shooter for intake");
-            setMotorPower(INTAKE_POWER);
+            setMotorVelocity(INTAKE_VELOCITY);
+            signatureDetector.arm(CoralSignatureDetector.Mode.INTAKE, INTAKE_VELOCITY);
+            handledSignatureEnteredTimestamp = signatureDetector.getEnteredTimestamp();
+            coralDetectedTime = Double.NaN;
             currentState = ShooterState.READY_TO_INTAKE;
             stateTimer.reset();
             stateTimer.start();
@@ -129,10 +166,9 @@ public class ShooterSubsystem extends SubsystemBase {
     public void shootCoral() {
         if (currentState == ShooterState.CORAL_INSIDE) {
             Logger.log("Shooting coral");
-            setMotorPower(SHOOTING_POWER);
-            currentState = ShooterState.SHOOT_CORAL;
-            stateTimer.reset();
-            stateTimer.start();
+            setMotorVelocity(SHOOTING_VELOCITY);
+            signatureDetector.arm(CoralSignatureDetector.Mode.SHOOT, SHOOTING_VELOCITY);
+            startShot();
         } else {
             Logger.log("Cannot shoot - no coral inside shooter");
         }
@@ -144,17 +180,17 @@ public class ShooterSubsystem extends SubsystemBase {
      */
     public void fineTuneIntake() {
         Logger.log("Fine tuning shooter intake");
-        setMotorPower(FINE_TUNE_POWER);
+        setMotorVelocity(FINE_TUNE_VELOCITY);
         // Don't change the state - this can be called from multiple states
     }
 
     public void shootBottomLevelCoral() {
         if (currentState == ShooterState.CORAL_INSIDE) {
             Logger.log("Shooting coral to bottom level");
-            leftMotor.set(SHOOTING_POWER - 0.15);
-            rightMotor.set(SHOOTING_POWER + 0.5);
-            stateTimer.reset();
-            stateTimer.start();
+            // the motors spin apart to drop the coral, so the right one stops following for this shot
+            targetVelocity = 0.0;
+            motors.setIndependent(BOTTOM_LEVEL_LEFT_POWER, BOTTOM_LEVEL_RIGHT_POWER);
+            startShot();
         } else {
             Logger.log("Cannot shoot - no coral inside shooter");
         }
@@ -168,15 +204,27 @@ public class ShooterSubsystem extends SubsystemBase {
         Logger.log("Emergency stop triggered - shooter reset to NO_CORAL state");
     }
 
+    private void startShot() {
+        currentState = ShooterState.SHOOT_CORAL;
+        shotDetector.start(hasColorSensor);
+        // only an exit after the shot started counts
+        if (hasColorSensor) {
+            handledExitedTimestamp = colorSensorSampler.getLatest().exitedTimestampSeconds;
+        }
+        handledSignatureExitedTimestamp = signatureDetector.getExitedTimestamp();
+        coralExited = false;
+        stateTimer.reset();
+        stateTimer.start();
+    }
+
     /**
-     * Set the motor power using open-loop control
-     * @param percentOutput Target percentage output (-1.0 to 1.0)
+     * Set the wheel velocity using the closed loop of the motor controller
+     * @param velocity Target velocity in RPM
      */
-    private void setMotorPower(double percentOutput) {
-        Logger.log("Setting shooter power to " + percentOutput);
-        leftMotor.set(percentOutput);
-        rightMotor.set(percentOutput);
-        // Right motor follows left motor automatically
+    private void setMotorVelocity(double velocity) {
+        Logger.log("Setting shooter velocity to " + velocity + " RPM");
+        targetVelocity = velocity;
+        motors.setReference(velocity, ControlType.kVelocity, 0.0);
     }
 
     /**
@@ -184,9 +232,9 @@ public class ShooterSubsystem extends SubsystemBase {
      */
     private void stopMotors() {
         Logger.log("Stopping shooter motors");
-        leftMotor.stopMotor();
-        rightMotor.stopMotor();
-        // Right motor follows left motor, so no need to stop it separately
+        targetVelocity = 0.0;
+        motors.stopMotor();
+        signatureDetector.disarm();
     }
 
     /**
@@ -198,7 +246,7 @@ public class ShooterSubsystem extends SubsystemBase {
     }
 
     /**
-     * Checks if a game piece has entered the shooter using the color sensor's proximity reading
+     * Checks if a game piece is at the entry of the shooter, from the latest color sensor sample
      * @return true if a game piece is detected at the entry of the shooter, false if no sensor
      */
     public boolean hasGamePieceEntered() {
@@ -206,40 +254,68 @@ public class ShooterSubsystem extends SubsystemBase {
             return false;
         }
 
-        int proximity = colorSensor.getProximity();
-        boolean isClose = proximity > PROXIMITY_THRESHOLD;
-        
-        // If we detect a sudden increase in proximity, a game piece likely entered
-        if (isClose && lastProximity <= PROXIMITY_THRESHOLD) {
-            var detectedColor = colorSensor.getColor();
-            Logger.log(String.format("Coral detected! Color: R=%.2f, G=%.2f, B=%.2f, Proximity=%d",
-                detectedColor.red, detectedColor.green, detectedColor.blue, proximity));
+        ColorSensorSampler.Reading reading = colorSensorSampler.getLatest();
+        if (reading.enteredTimestampSeconds > handledEnteredTimestamp) {
+            handledEnteredTimestamp = reading.enteredTimestampSeconds;
+            Logger.log(String.format("Coral detected %.0f ms ago! Color: R=%.2f, G=%.2f, B=%.2f, Proximity=%d",
+                (Timer.getFPGATimestamp() - reading.enteredTimestampSeconds) * 1000,
+                reading.color.red, reading.color.green, reading.color.blue, reading.proximity));
         }
-        
-        lastProximity = proximity;
-        return isClose;
+        return reading.present;
     }
 
     /**
-     * Checks if a game piece has exited the shooter by checking if proximity drops after being high
-     * @return true if a game piece is detected leaving the shooter, false if no sensor
+     * Checks if a game piece has left the shooter since the last call
+     * @return true once for every exit edge of the color sensor, false if no sensor
      */
     public boolean hasGamePieceExited() {
         if (!hasColorSensor) {
             return false;
         }
 
-        int proximity = colorSensor.getProximity();
-        boolean hasExited = lastProximity > PROXIMITY_THRESHOLD && proximity <= PROXIMITY_THRESHOLD;
-        Logger.log("proxity sensor value = " + proximity + " hasExited = " + hasExited);
+        ColorSensorSampler.Reading reading = colorSensorSampler.getLatest();
+        boolean hasExited = reading.exitedTimestampSeconds > handledExitedTimestamp;
         if (hasExited) {
+            handledExitedTimestamp = reading.exitedTimestampSeconds;
             Logger.log("Coral has exited the shooter");
         }
-        
-        lastProximity = proximity;
         return hasExited;
     }
 
+    /**
+     * @return true once for every coral entry the motor signature detector saw
+     */
+    public boolean hasSignatureEntered() {
+        double entered = signatureDetector.getEnteredTimestamp();
+        if (entered > handledSignatureEnteredTimestamp) {
+            handledSignatureEnteredTimestamp = entered;
+            Logger.logf("Coral entry seen by the shooter motors %.0f ms ago", (Timer.getFPGATimestamp() - entered) * 1000);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true once for every coral exit the motor signature detector saw
+     */
+    public boolean hasSignatureExited() {
+        double exited = signatureDetector.getExitedTimestamp();
+        if (exited > handledSignatureExitedTimestamp) {
+            handledSignatureExitedTimestamp = exited;
+            Logger.log("Coral exit seen by the shooter motors");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true once the coral has left the shooter, as soon as an exit edge is seen and before
+     *     the shot is complete
+     */
+    public boolean isCoralOut() {
+        return currentState == ShooterState.NO_CORAL || (currentState == ShooterState.SHOOT_CORAL && coralExited);
+    }
+
     /**
      * Get the current state of the shooter
      * @return Current shooter state
@@ -254,8 +330,17 @@ public class ShooterSubsystem extends SubsystemBase {
         switch (currentState) {
             case READY_TO_INTAKE:
                 // Check if coral has entered shooter
-                if (hasGamePieceEntered() || stateTimer.get() > INTAKE_TIMEOUT) {
-                    Logger.log("Coral detected or timeout reached - stopping motors");
+                // either the color sensor or the motors seeing the coral is enough
+                boolean sensorEntered = hasGamePieceEntered();
+                boolean signatureEntered = hasSignatureEntered();
+                if (Double.isNaN(coralDetectedTime) && (sensorEntered || signatureEntered || stateTimer.get() > INTAKE_TIMEOUT)) {
+                    Logger.logf("Coral detected (sensor %b, motors %b) or timeout reached after %.2f s - stopping motors",
+                        sensorEntered, signatureEntered, stateTimer.get());
+                    coralDetectedTime = stateTimer.get();
+                }
+                // while calibrating the motor signature the wheels keep pulling, so the log has the coral in them
+                double hold = SmartDashboard.getBoolean(CALIBRATE_SIGNATURE_KEY, false) ? SIGNATURE_CALIBRATION_HOLD : 0;
+                if (!Double.isNaN(coralDetectedTime) && stateTimer.get() - coralDetectedTime >= hold) {
                     stopMotors();
                     currentState = ShooterState.CORAL_INSIDE;
                     stateTimer.stop();
@@ -263,9 +348,15 @@ public class ShooterSubsystem extends SubsystemBase {
                 break;
                 
             case SHOOT_CORAL:
-                // Check if shooting time is complete
-                if (stateTimer.get() >= SHOOT_DURATION) {
-                    Logger.log("Shooting complete - stopping motors");
+                // Check if the coral is out, or the shot timed out
+                // both sources are checked so each one's edge is consumed
+                boolean exited = hasGamePieceExited() | hasSignatureExited();
+                coralExited |= exited;
+                double current = Math.max(leftMotor.getOutputCurrent(), rightMotor.getOutputCurrent());
+                boolean complete = shotDetector.update(stateTimer.get(), current, leftMotor.getEncoder().getVelocity(), exited);
+                if (complete || stateTimer.get() >= SHOOT_DURATION) {
+                    Logger.logf("Shooting complete after %.2f s%s - stopping motors", stateTimer.get(), complete ? "" : " (timeout)");
+                    SmartDashboard.putNumber("Shooter/Shot time (s)", stateTimer.get());
                     stopMotors();
                     currentState = ShooterState.NO_CORAL;
                     stateTimer.stop();
@@ -282,6 +373,7 @@ public class ShooterSubsystem extends SubsystemBase {
         }
         
         // Update telemetry
+        motors.checkDivergence();
         updateTelemetry();
     }
 
@@ -290,31 +382,29 @@ public class ShooterSubsystem extends SubsystemBase {
         SmartDashboard.putNumber("Shooter/Left/Velocity", leftMotor.getEncoder().getVelocity());
         SmartDashboard.putNumber("Shooter/Left/Current", leftMotor.getOutputCurrent());
         SmartDashboard.putNumber("Shooter/Left/Voltage", leftMotor.getBusVoltage());
-        SmartDashboard.putNumber("Shooter/Left/Power", leftMotor.get());
+        SmartDashboard.putNumber("Shooter/Left/Power", leftMotor.getAppliedOutput());
         
         // Right motor telemetry
         SmartDashboard.putNumber("Shooter/Right/Velocity", rightMotor.getEncoder().getVelocity());
         SmartDashboard.putNumber("Shooter/Right/Current", rightMotor.getOutputCurrent());
         SmartDashboard.putNumber("Shooter/Right/Voltage", rightMotor.getBusVoltage());
-        SmartDashboard.putNumber("Shooter/Right/Power", rightMotor.get());
+        SmartDashboard.putNumber("Shooter/Right/Power", rightMotor.getAppliedOutput());
 
         // State telemetry
         SmartDashboard.putString("Shooter/State", currentState.toString());
         SmartDashboard.putNumber("Shooter/StateTimer", stateTimer.get());
         
-        // Add power output telemetry
-        SmartDashboard.putNumber("Shooter/TargetPower", 
-            currentState == ShooterState.SHOOT_CORAL ? SHOOTING_POWER : 
-            currentState == ShooterState.READY_TO_INTAKE ? INTAKE_POWER : 0);
+        // Velocity setpoint telemetry, 0 when stopped or open loop
+        SmartDashboard.putNumber("Shooter/TargetVelocity", targetVelocity);
 
         // Color sensor telemetry (only if sensor is present)
         if (hasColorSensor) {
-            var color = colorSensor.getColor();
-            int proximity = colorSensor.getProximity();
-            SmartDashboard.putNumber("Shooter/Sensor/Red", color.red);
-            SmartDashboard.putNumber("Shooter/Sensor/Green", color.green);
-            SmartDashboard.putNumber("Shooter/Sensor/Blue", color.blue);
-            SmartDashboard.putNumber("Shooter/Sensor/Proximity", proximity);
+            ColorSensorSampler.Reading reading = colorSensorSampler.getLatest();
+            SmartDashboard.putNumber("Shooter/Sensor/Red", reading.color.red);
+            SmartDashboard.putNumber("Shooter/Sensor/Green", reading.color.green);
+            SmartDashboard.putNumber("Shooter/Sensor/Blue", reading.color.blue);
+            SmartDashboard.putNumber("Shooter/Sensor/Proximity", reading.proximity);
+            SmartDashboard.putNumber("Shooter/Sensor/Read time (ms)", reading.readMillis);
         }
         SmartDashboard.putBoolean("Shooter/CoralPresent", currentState == ShooterState.CORAL_INSIDE);
     }
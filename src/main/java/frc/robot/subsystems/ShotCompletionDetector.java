@@ -0,0 +1,62 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.filter.Debouncer;
+
+/**
+ * Tells when a shot is complete from the shooter motors and the color sensor. While the coral is
+ * squeezed through the wheels the motors draw more current and slow down, once it is out they spin
+ * freely again. With the color sensor the shot is complete when the sensor or the motor signature
+ * detector saw the coral leave and the motors run free, without it when the motors run free after
+ * they were seen loaded by the coral.
+ */
+public class ShotCompletionDetector {
+    // current of a motor with the coral in the wheels, spinning freely draws a few amps
+    private static final double LOADED_CURRENT_AMPS = 15.0;
+    // the wheels slow down by this fraction of their top speed with the coral in them
+    private static final double LOADED_VELOCITY_DIP = 0.1;
+    // how long the motors have to run free for the coral to be out
+    private static final double FREE_DEBOUNCE_SECONDS = 0.06;
+    // the motors draw spin up current for about this long, which looks like a load
+    private static final double MIN_SHOT_SECONDS = 0.15;
+
+    private final Debouncer freeDebouncer = new Debouncer(FREE_DEBOUNCE_SECONDS);
+    private boolean useSensor;
+    private boolean sensorExited;
+    // the motors were loaded by the coral, running free before that is only the end of the spin up
+    private boolean loadedSeen;
+    private double peakSpeed;
+
+    /**
+     * Starts watching a new shot
+     * @param useSensor Whether the color sensor can see the coral leave, an exit edge is required then
+     */
+    public void start(boolean useSensor) {
+        this.useSensor = useSensor;
+        sensorExited = false;
+        loadedSeen = false;
+        peakSpeed = 0;
+        freeDebouncer.calculate(false);
+    }
+
+    /**
+     * @param elapsedSeconds Time since the shot started
+     * @param currentAmps Highest current of the shooter motors
+     * @param velocity Speed of the shooter wheels, in any unit
+     * @param sensorExit Whether the color sensor or the motor signature saw the coral leave this loop
+     * @return true once the shot is complete
+     */
+    public boolean update(double elapsedSeconds, double currentAmps, double velocity, boolean sensorExit) {
+        double speed = Math.abs(velocity);
+        peakSpeed = Math.max(peakSpeed, speed);
+        boolean velocityDip = speed < peakSpeed * (1 - LOADED_VELOCITY_DIP);
+        boolean loaded = currentAmps > LOADED_CURRENT_AMPS || velocityDip;
+        boolean free = freeDebouncer.calculate(!loaded);
+        sensorExited |= sensorExit;
+        // the spin up draws a high current but does not slow the wheels, so only a dip counts during it
+        loadedSeen |= velocityDip || (loaded && elapsedSeconds >= MIN_SHOT_SECONDS) || sensorExit;
+        if (elapsedSeconds < MIN_SHOT_SECONDS) {
+            return false;
+        }
+        return free && (sensorExited || (!useSensor && loadedSeen));
+    }
+}
@@ -0,0 +1,239 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.CoordinateSystem;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.LimelightConstants;
+import frc.robot.util.Logger;
+
+/**
+ * Simulated Limelight for desktop simulation.
+ * Projects the 2025 field's AprilTags from the simulated robot pose through the camera transform and
+ * publishes the same NetworkTables keys a real Limelight does, so {@link LimelightSubsystem} and the
+ * {@link PoseEstimator} vision path run unchanged. Frames are produced on their own thread at the
+ * configured frame rate, with latency, noise and random dropouts. Several instances with different
+ * table names can run at once to load-test vision ingestion.
+ */
+public class SimulatedLimelight extends SubsystemBase {
+    // How often the camera thread checks for frames to capture or publish
+    private static final double TICK_PERIOD_SECONDS = 0.002;
+
+    /**
+     * Everything a Limelight publishes for one frame
+     */
+    private static final class Frame {
+        double publishTimeSeconds;
+        boolean hasTarget;
+        int tagId;
+        double tx;
+        double ty;
+        double ta;
+        double[] botpose;
+        double[] targetPoseCameraSpace;
+        double[] cameraPoseTargetSpace;
+    }
+
+    private final NetworkTable table;
+    private final AprilTagFieldLayout aprilTagField = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
+    private final Supplier<Pose2d> truePoseSupplier;
+    private final Transform3d robotToCamera;
+    private final Random random = new Random();
+    private final Notifier notifier;
+
+    // Frames waiting for their simulated latency to pass, oldest first
+    private final ArrayDeque<Frame> pendingFrames = new ArrayDeque<>();
+
+    // Copied from the main loop so the camera thread never reads the drive subsystem directly
+    private volatile Pose2d truePose = new Pose2d();
+
+    private volatile double frameRate = LimelightConstants.kSimFrameRate;
+    private volatile double latencyMillis =
+        LimelightConstants.kSimPipelineLatencyMillis + LimelightConstants.kSimCaptureLatencyMillis;
+    private volatile double angleNoiseDegrees = LimelightConstants.kSimAngleNoiseDegrees;
+    private volatile double poseNoiseMeters = LimelightConstants.kSimPoseNoiseMeters;
+    private volatile double dropoutProbability = LimelightConstants.kSimDropoutProbability;
+
+    private double nextCaptureSeconds = 0;
+    private long heartbeat = 0;
+
+    /**
+     * @param tableName NetworkTables name of the camera, "limelight" for the primary camera
+     * @param truePoseSupplier ground truth pose of the simulated robot
+     * @param robotToCamera camera position and orientation relative to the robot center, including the
+     *     roll of a camera mounted on its side
+     */
+    public SimulatedLimelight(String tableName, Supplier<Pose2d> truePoseSupplier, Transform3d robotToCamera) {
+        this.table = NetworkTableInstance.getDefault().getTable(tableName);
+        this.truePoseSupplier = truePoseSupplier;
+        this.robotToCamera = robotToCamera;
+
+        notifier = new Notifier(this::tick);
+        notifier.setName("SimulatedLimelight " + tableName);
+        notifier.startPeriodic(TICK_PERIOD_SECONDS);
+
+        Logger.log("Simulated limelight started on table " + tableName);
+    }
+
+    public void setFrameRate(double framesPerSecond) {
+        frameRate = framesPerSecond;
+    }
+
+    public void setLatencyMillis(double millis) {
+        latencyMillis = millis;
+    }
+
+    public void setNoise(double angleStdDevDegrees, double poseStdDevMeters) {
+        angleNoiseDegrees = angleStdDevDegrees;
+        poseNoiseMeters = poseStdDevMeters;
+    }
+
+    public void setDropoutProbability(double probability) {
+        dropoutProbability = probability;
+    }
+
+    @Override
+    public void simulationPeriodic() {
+        truePose = truePoseSupplier.get();
+    }
+
+    private void tick() {
+        double now = WPIUtilJNI.now() * 1e-6;
+
+        if (now >= nextCaptureSeconds) {
+            nextCaptureSeconds = now + 1.0 / frameRate;
+            if (random.nextDouble() >= dropoutProbability) {
+                Frame frame = capture(truePose);
+                frame.publishTimeSeconds = now + latencyMillis / 1000.0;
+                pendingFrames.addLast(frame);
+            }
+        }
+
+        while (!pendingFrames.isEmpty() && pendingFrames.peekFirst().publishTimeSeconds <= now) {
+            publish(pendingFrames.pollFirst());
+        }
+    }
+
+    /**
+     * Projects every tag through the camera and keeps the largest visible one as the primary target,
+     * the same way the Limelight picks its target
+     */
+    private Frame capture(Pose2d robotPose) {
+        Frame frame = new Frame();
+        Pose3d cameraPose = new Pose3d(robotPose).transformBy(robotToCamera);
+        double halfHorizontalFov = Math.toRadians(LimelightConstants.kSimHorizontalFovDegrees / 2);
+        double halfVerticalFov = Math.toRadians(LimelightConstants.kSimVerticalFovDegrees / 2);
+        // Area of the image plane at one meter, used to turn tag size into percent of image
+        double imageArea = 4 * Math.tan(halfHorizontalFov) * Math.tan(halfVerticalFov);
+
+        Pose3d bestTagInCamera = null;
+        int tagCount = 0;
+        double totalDistance = 0;
+        double totalArea = 0;
+        for (AprilTag tag : aprilTagField.getTags()) {
+            Pose3d tagInCamera = tag.pose.relativeTo(cameraPose);
+            Translation3d translation = tagInCamera.getTranslation();
+            double distance = translation.getNorm();
+            if (translation.getX() <= 0 || distance > LimelightConstants.kSimMaxDistanceMeters) {
+                continue;
+            }
+            // Angles in the image of the camera, which rolls with the camera mount
+            double horizontalAngle = Math.atan2(translation.getY(), translation.getX());
+            double verticalAngle = Math.atan2(translation.getZ(), translation.getX());
+            if (Math.abs(horizontalAngle) > halfHorizontalFov || Math.abs(verticalAngle) > halfVerticalFov) {
+                continue;
+            }
+            // The tag face points along its x axis, skip tags seen from behind
+            Translation3d tagNormal = new Translation3d(1, 0, 0).rotateBy(tag.pose.getRotation());
+            Translation3d tagToCamera = cameraPose.getTranslation().minus(tag.pose.getTranslation());
+            double facing = (tagNormal.getX() * tagToCamera.getX() + tagNormal.getY() * tagToCamera.getY()
+                + tagNormal.getZ() * tagToCamera.getZ()) / distance;
+            if (facing <= 0.1) {
+                continue;
+            }
+
+            double area = 100 * LimelightConstants.kTagSizeMeters * LimelightConstants.kTagSizeMeters * facing
+                / (distance * distance * imageArea);
+            tagCount++;
+            totalDistance += distance;
+            totalArea += area;
+            if (bestTagInCamera == null || area > frame.ta) {
+                bestTagInCamera = tagInCamera;
+                frame.tagId = tag.ID;
+                frame.ta = area;
+                // Limelight angles are positive to the right and up in the image. With the camera rolled
+                // 90 degrees, as on the robot, the image right points down and the image up points right
+                frame.tx = -Math.toDegrees(horizontalAngle) + random.nextGaussian() * angleNoiseDegrees;
+                frame.ty = Math.toDegrees(verticalAngle) + random.nextGaussian() * angleNoiseDegrees;
+            }
+        }
+
+        frame.hasTarget = bestTagInCamera != null;
+        double totalLatency = latencyMillis;
+        if (frame.hasTarget) {
+            Pose3d cameraInTag = new Pose3d().transformBy(
+                new Transform3d(bestTagInCamera.getTranslation(), bestTagInCamera.getRotation()).inverse());
+            frame.targetPoseCameraSpace = toLimelightArray(bestTagInCamera);
+            frame.cameraPoseTargetSpace = toLimelightArray(cameraInTag);
+            frame.botpose = new double[] {
+                robotPose.getX() + random.nextGaussian() * poseNoiseMeters,
+                robotPose.getY() + random.nextGaussian() * poseNoiseMeters,
+                0,
+                0,
+                0,
+                robotPose.getRotation().getDegrees(),
+                totalLatency,
+                tagCount,
+                0,
+                totalDistance / tagCount,
+                totalArea / tagCount
+            };
+        } else {
+            frame.targetPoseCameraSpace = new double[6];
+            frame.cameraPoseTargetSpace = new double[6];
+            frame.botpose = new double[] {0, 0, 0, 0, 0, 0, totalLatency, 0, 0, 0, 0};
+        }
+        return frame;
+    }
+
+    /**
+     * Converts a pose from WPILib's axes (x forward, y left, z up) to the Limelight's (x right, y down,
+     * z forward) and packs it the way the Limelight publishes it
+     */
+    private static double[] toLimelightArray(Pose3d wpilibPose) {
+        Pose3d pose = CoordinateSystem.convert(wpilibPose, CoordinateSystem.NWU(), CoordinateSystem.EDN());
+        return new double[] {
+            pose.getX(), pose.getY(), pose.getZ(),
+            Math.toDegrees(pose.getRotation().getX()),
+            Math.toDegrees(pose.getRotation().getY()),
+            Math.toDegrees(pose.getRotation().getZ())
+        };
+    }
+
+    private void publish(Frame frame) {
+        table.getEntry("tv").setDouble(frame.hasTarget ? 1 : 0);
+        table.getEntry("tx").setDouble(frame.hasTarget ? frame.tx : 0);
+        table.getEntry("ty").setDouble(frame.hasTarget ? frame.ty : 0);
+        table.getEntry("ta").setDouble(frame.hasTarget ? frame.ta : 0);
+        table.getEntry("tid").setDouble(frame.hasTarget ? frame.tagId : -1);
+        table.getEntry("tl").setDouble(LimelightConstants.kSimPipelineLatencyMillis);
+        table.getEntry("cl").setDouble(latencyMillis - LimelightConstants.kSimPipelineLatencyMillis);
+        table.getEntry("hb").setDouble(heartbeat++);
+        table.getEntry("botpose_wpiblue").setDoubleArray(frame.botpose);
+        table.getEntry("targetpose_cameraspace").setDoubleArray(frame.targetPoseCameraSpace);
+        table.getEntry("camerapose_targetspace").setDoubleArray(frame.cameraPoseTargetSpace);
+    }
+}
@@ -1,6 +1,8 @@
 package frc.robot.subsystems;
 
+import com.revrobotics.spark.ClosedLoopSlot;
 import com.revrobotics.spark.SparkClosedLoopController;
+import com.revrobotics.spark.SparkClosedLoopController.ArbFFUnits;
 import com.revrobotics.spark.SparkMax;
 import com.revrobotics.spark.SparkBase.ControlType;
 import com.revrobotics.spark.SparkBase.PersistMode;
@@ -13,8 +15,12 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.units.Units;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.sysid.SysIdRoutineLog;
+import frc.robot.Constants.ModuleConstants;
 import frc.robot.util.Logger;
+import frc.robot.util.SysIdSampler;
 
 public class SwerveModule {
     private final SparkMax driveMotor;
@@ -92,6 +98,16 @@ public class SwerveModule {
     }
 
     public void setDesiredState(SwerveModuleState desiredState) {
+        setDesiredState(desiredState, 0);
+    }
+
+    /**
+     * Sets the module state with a feedforward force on top of the velocity loop, for the
+     * acceleration and friction the velocity feedforward does not cover
+     * @param desiredState Target state
+     * @param driveForceNewtons Force the wheel should push with along the direction of the desired state
+     */
+    public void setDesiredState(SwerveModuleState desiredState, double driveForceNewtons) {
         // apply chasis angular offset to the desired state
         SwerveModuleState correctedDesiredState = new SwerveModuleState();
         correctedDesiredState.speedMetersPerSecond = desiredState.speedMetersPerSecond;
@@ -103,6 +119,10 @@ public class SwerveModule {
             correctedDesiredState.angle
         );
         correctedDesiredState.optimize(new Rotation2d(turningEncoder.getPosition()));
+        // the wheel pushes the other way if the optimization reversed it
+        if (correctedDesiredState.angle.minus(originalState.angle).getCos() < 0) {
+            driveForceNewtons = -driveForceNewtons;
+        }
 
         // Calculate the drive output from the drive encoder velocity
         desiredSpeed = correctedDesiredState.speedMetersPerSecond;
@@ -128,7 +148,8 @@ public class SwerveModule {
         SmartDashboard.putNumber(moduleName + "/TurningMotor/OutputCurrent", turningMotor.getOutputCurrent());
 
         // PID Controllers sets the velocity and angle pos as a reference to KEEP A CONSISTENT VALUE
-        driveClosedLoopController.setReference(desiredSpeed, ControlType.kVelocity);
+        driveClosedLoopController.setReference(desiredSpeed, ControlType.kVelocity, ClosedLoopSlot.kSlot0,
+            getFeedforwardVolts(driveForceNewtons), ArbFFUnits.kVoltage);
         turningClosedLoopController.setReference(desiredAngle, ControlType.kPosition);
         
         // Log PID controller details
@@ -136,6 +157,55 @@ public class SwerveModule {
                    " radians (" + Math.toDegrees(desiredAngle) + "°)");
     }
 
+    /**
+     * Voltage that overcomes the drive friction and makes the drive motor produce a wheel force, the
+     * back EMF is already covered by the velocity feedforward of the closed loop
+     */
+    private double getFeedforwardVolts(double driveForceNewtons) {
+        double motorTorque = driveForceNewtons * ModuleConstants.WHEEL_DIAMETER / 2 / ModuleConstants.DRIVE_MOTOR_REDUCTION;
+        return Configs.Feedforward.DRIVE_KS * Math.signum(desiredSpeed)
+            + motorTorque / driveDCMotor.KtNMPerAmp * driveDCMotor.rOhms;
+    }
+
+    /**
+     * Drives open loop with the wheel held straight ahead, for characterizing the drive
+     */
+    public void setDriveVoltage(double volts) {
+        desiredAngle = chasisAngularOffset;
+        turningClosedLoopController.setReference(desiredAngle, ControlType.kPosition);
+        driveMotor.setVoltage(volts);
+    }
+
+    /**
+     * Turns open loop with the drive motor stopped, for characterizing the steering
+     */
+    public void setSteerVoltage(double volts) {
+        driveMotor.stopMotor();
+        turningMotor.setVoltage(volts);
+    }
+
+    public void logDrive(SysIdRoutineLog log) {
+        log.motor("drive-" + moduleName)
+            .voltage(Units.Volts.of(driveMotor.getAppliedOutput() * driveMotor.getBusVoltage()))
+            .linearPosition(Units.Meters.of(getDrivePosition()))
+            .linearVelocity(Units.MetersPerSecond.of(getDriveVelocity()));
+    }
+
+    public void logSteer(SysIdRoutineLog log) {
+        log.motor("steer-" + moduleName)
+            .voltage(Units.Volts.of(turningMotor.getAppliedOutput() * turningMotor.getBusVoltage()))
+            .angularPosition(Units.Radians.of(turningEncoder.getPosition()))
+            .angularVelocity(Units.RadiansPerSecond.of(turningEncoder.getVelocity()));
+    }
+
+    public void addDriveSignals(SysIdSampler sampler) {
+        sampler.add(moduleName, driveMotor, this::getDrivePosition, this::getDriveVelocity);
+    }
+
+    public void addSteerSignals(SysIdSampler sampler) {
+        sampler.add(moduleName, turningMotor, turningEncoder::getPosition, turningEncoder::getVelocity);
+    }
+
     private double getDriveVelocity() {
         return driveEncoder.getVelocity();
     }
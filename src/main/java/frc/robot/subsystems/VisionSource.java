@@ -0,0 +1,27 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * A source of AprilTag based robot pose measurements that the {@link PoseEstimator} can fuse.
+ * The Limelight is the primary source, other sources (like the on-RIO detector) act as fallbacks.
+ */
+public interface VisionSource {
+    /**
+     * @return whether the source currently has a usable measurement
+     */
+    boolean isTargetValid();
+
+    /**
+     * Estimates the robot pose from the latest measurement
+     * @param robotRotation2d current robot heading, used to rotate the camera measurement into the field
+     * @return estimated robot pose on the field, or null if there is no usable measurement
+     */
+    Pose2d getPose(Rotation2d robotRotation2d);
+
+    /**
+     * @return FPGA timestamp of the latest measurement in milliseconds
+     */
+    double getTimeRecordedInMilis();
+}
@@ -0,0 +1,96 @@
+package frc.robot.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import edu.wpi.first.apriltag.AprilTagDetector;
+import edu.wpi.first.cscore.OpenCvLoader;
+import frc.robot.subsystems.OnboardAprilTagVision;
+
+/**
+ * Desktop benchmark for the on-RIO AprilTag detector.
+ * Runs the robot's detector settings over a directory of recorded images with 1..N worker threads
+ * and prints the throughput in frames per second, total and per core.
+ *
+ * Usage: ./gradlew aprilTagBenchmark -Pimages=/path/to/frames [-Pthreads=4] [-Pseconds=5]
+ */
+public final class AprilTagBenchmark {
+    private AprilTagBenchmark() {}
+
+    public static void main(String... args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: AprilTagBenchmark <image directory> [max threads] [seconds per run]");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        double secondsPerRun = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+
+        OpenCvLoader.forceLoad();
+
+        List<Mat> frames = new ArrayList<>();
+        for (File file : OnboardAprilTagVision.listRecordedFrames(directory)) {
+            Mat frame = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_GRAYSCALE);
+            if (!frame.empty()) {
+                frames.add(frame);
+            }
+        }
+        if (frames.isEmpty()) {
+            System.err.println("No images found in " + directory);
+            System.exit(1);
+        }
+        System.out.println("Loaded " + frames.size() + " frames from " + directory);
+        System.out.println("threads, frames/s, frames/s per core, detections/frame");
+
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            runBenchmark(frames, threads, secondsPerRun);
+        }
+
+        for (Mat frame : frames) {
+            frame.release();
+        }
+    }
+
+    private static void runBenchmark(List<Mat> frames, int threadCount, double seconds) throws InterruptedException {
+        AtomicInteger nextFrame = new AtomicInteger();
+        AtomicLong framesDone = new AtomicLong();
+        AtomicLong detections = new AtomicLong();
+        long endNanos = System.nanoTime() + (long) (seconds * 1e9);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                AprilTagDetector detector = OnboardAprilTagVision.createDetector();
+                // Warm up so the first run is not penalized
+                detector.detect(frames.get(0));
+                while (System.nanoTime() < endNanos) {
+                    Mat frame = frames.get(Math.floorMod(nextFrame.getAndIncrement(), frames.size()));
+                    detections.addAndGet(detector.detect(frame).length);
+                    framesDone.incrementAndGet();
+                }
+                detector.close();
+            });
+            threads.add(thread);
+        }
+
+        long startNanos = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - startNanos) * 1e-9;
+
+        double framesPerSecond = framesDone.get() / elapsed;
+        System.out.printf("%d, %.1f, %.1f, %.2f%n",
+            threadCount, framesPerSecond, framesPerSecond / threadCount,
+            framesDone.get() == 0 ? 0.0 : (double) detections.get() / framesDone.get());
+    }
+}
@@ -0,0 +1,274 @@
+package frc.robot.tools;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pathplanner.lib.config.RobotConfig;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectory;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants;
+import frc.robot.Constants.TargetSelectionConstants;
+import frc.robot.subsystems.ElevatorSubsystem;
+import frc.robot.subsystems.ShooterSubsystem;
+import frc.robot.util.DriveLimits;
+
+/**
+ * Desktop tool that searches the path library for the fastest autos.
+ * Every path's traversal time is computed from its ideal trajectory under the robot config, at the
+ * same physical limits the trajectory compiler uses, and the legs are chained whenever one path ends
+ * where the next starts. Autos alternate between the reef and the coral station, score after every
+ * reef leg and intake after every station leg, and never score the same branch twice. The search
+ * over all chains runs in parallel per first leg, and the fastest auto from every starting position
+ * is written as a .auto file next to the hand-made ones.
+ *
+ * Usage: ./gradlew optimizeAutos [-Plegs=4] [-PintakeSeconds=1.0]
+ */
+public final class AutoSequenceOptimizer {
+    // a path starts where another ends if their anchors are this close
+    private static final double CONNECT_TOLERANCE_METERS = 0.3;
+    // a path ending this close to a coral station location ends at the station
+    private static final double STATION_RADIUS_METERS = 1.0;
+    // two reef legs ending this close score the same branch
+    private static final double SAME_BRANCH_METERS = 0.1;
+    private static final String AUTO_PREFIX = "optimized start ";
+    private static final String AUTO_FOLDER = "Optimized";
+
+    private AutoSequenceOptimizer() {}
+
+    private static final class Leg {
+        final String name;
+        final Translation2d start;
+        final Translation2d end;
+        final double driveSeconds;
+        final boolean toStation;
+
+        Leg(String name, Translation2d start, Translation2d end, double driveSeconds, boolean toStation) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.driveSeconds = driveSeconds;
+            this.toStation = toStation;
+        }
+    }
+
+    private static final class Sequence {
+        final List<Leg> legs;
+        final double seconds;
+
+        Sequence(List<Leg> legs, double seconds) {
+            this.legs = legs;
+            this.seconds = seconds;
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        int legCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        double intakeSeconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        double scoreSeconds = getScoreSeconds();
+
+        File pathPlannerDirectory = new File(Filesystem.getDeployDirectory(), "pathplanner");
+        RobotConfig config = RobotConfig.fromGUISettings();
+
+        List<Leg> legs = new ArrayList<>();
+        File[] pathFiles = new File(pathPlannerDirectory, "paths").listFiles((dir, name) -> name.endsWith(".path"));
+        for (File file : pathFiles == null ? new File[0] : pathFiles) {
+            String name = file.getName().substring(0, file.getName().length() - ".path".length());
+            PathPlannerPath path = DriveLimits.withPhysicalLimits(PathPlannerPath.fromPathFile(name), config);
+            Optional<PathPlannerTrajectory> trajectory = path.getIdealTrajectory(config);
+            if (trajectory.isEmpty()) {
+                System.err.println("Skipping " + name + ": it has no ideal starting state");
+                continue;
+            }
+            List<Pose2d> poses = path.getPathPoses();
+            Translation2d end = poses.get(poses.size() - 1).getTranslation();
+            legs.add(new Leg(name, poses.get(0).getTranslation(), end,
+                trajectory.get().getTotalTimeSeconds(), isAtStation(end)));
+        }
+        System.out.printf("Loaded %d paths, score %.2f s, intake %.2f s%n", legs.size(), scoreSeconds, intakeSeconds);
+
+        // first legs start away from every other path's end, on the starting line
+        List<Leg> firstLegs = new ArrayList<>();
+        for (Leg leg : legs) {
+            if (!leg.toStation && legs.stream().noneMatch(other -> other.end.getDistance(leg.start) < CONNECT_TOLERANCE_METERS)) {
+                firstLegs.add(leg);
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<Sequence>> futures = new ArrayList<>();
+        for (Leg first : firstLegs) {
+            futures.add(executor.submit(() -> {
+                List<Leg> chain = new ArrayList<>();
+                chain.add(first);
+                return search(legs, chain, legCount, scoreSeconds, intakeSeconds);
+            }));
+        }
+        List<Sequence> best = new ArrayList<>();
+        for (Future<Sequence> future : futures) {
+            Sequence sequence = future.get();
+            if (sequence != null) {
+                best.add(sequence);
+            }
+        }
+        executor.shutdown();
+        System.out.printf("Searched %d first legs in %.1f ms%n", firstLegs.size(), (System.nanoTime() - startNanos) / 1e6);
+
+        // group by starting position, keep the fastest of each
+        List<Sequence> perStart = new ArrayList<>();
+        best.sort(Comparator.comparingDouble(sequence -> sequence.seconds));
+        for (Sequence sequence : best) {
+            Translation2d start = sequence.legs.get(0).start;
+            if (perStart.stream().noneMatch(other -> other.legs.get(0).start.getDistance(start) < CONNECT_TOLERANCE_METERS)) {
+                perStart.add(sequence);
+            }
+        }
+        perStart.sort(Comparator.comparingDouble(sequence -> -sequence.legs.get(0).start.getY()));
+
+        File autoDirectory = new File(pathPlannerDirectory, "autos");
+        printExistingAutos(autoDirectory, legs, scoreSeconds, intakeSeconds);
+        for (int i = 0; i < perStart.size(); i++) {
+            Sequence sequence = perStart.get(i);
+            String autoName = AUTO_PREFIX + (i + 1);
+            writeAuto(new File(autoDirectory, autoName + ".auto"), sequence);
+            System.out.printf("%s (%.2f, %.2f): %.2f s via %s%n", autoName,
+                sequence.legs.get(0).start.getX(), sequence.legs.get(0).start.getY(), sequence.seconds,
+                String.join(" -> ", sequence.legs.stream().map(leg -> leg.name).toList()));
+        }
+    }
+
+    /**
+     * Time spent at the reef: waiting for the part of the elevator travel that did not overlap with
+     * the approach, then shooting
+     */
+    private static double getScoreSeconds() {
+        double elevatorSeconds = ElevatorSubsystem.estimateTravelSeconds(
+            ElevatorSubsystem.getLevelHeight(0), ElevatorSubsystem.getLevelHeight(Constants.AutoConstants.SCORING_LEVEL));
+        return Math.max(0, elevatorSeconds - TargetSelectionConstants.ELEVATOR_OVERLAP_SECONDS) + ShooterSubsystem.EXPECTED_SHOT_SECONDS;
+    }
+
+    private static boolean isAtStation(Translation2d position) {
+        for (Pose2d station : Constants.Locations.coralStationLocations) {
+            if (station.getTranslation().getDistance(position) < STATION_RADIUS_METERS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Depth first search over the legs that continue a chain
+     * @return the fastest complete sequence starting with the chain, or null if there is none
+     */
+    private static Sequence search(List<Leg> legs, List<Leg> chain, int legCount, double scoreSeconds, double intakeSeconds) {
+        if (chain.size() == legCount) {
+            return new Sequence(new ArrayList<>(chain), sequenceSeconds(chain, scoreSeconds, intakeSeconds));
+        }
+        Leg last = chain.get(chain.size() - 1);
+        Sequence best = null;
+        for (Leg next : legs) {
+            if (next.toStation == last.toStation || next.start.getDistance(last.end) > CONNECT_TOLERANCE_METERS) {
+                continue;
+            }
+            if (!next.toStation && chain.stream().anyMatch(leg -> !leg.toStation && leg.end.getDistance(next.end) < SAME_BRANCH_METERS)) {
+                continue;
+            }
+            chain.add(next);
+            Sequence candidate = search(legs, chain, legCount, scoreSeconds, intakeSeconds);
+            chain.remove(chain.size() - 1);
+            if (candidate != null && (best == null || candidate.seconds < best.seconds)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Driving time plus scoring after every reef leg and intaking after every station leg but the last
+     */
+    private static double sequenceSeconds(List<Leg> chain, double scoreSeconds, double intakeSeconds) {
+        double seconds = 0;
+        for (int i = 0; i < chain.size(); i++) {
+            Leg leg = chain.get(i);
+            seconds += leg.driveSeconds;
+            if (!leg.toStation) {
+                seconds += scoreSeconds;
+            } else if (i < chain.size() - 1) {
+                seconds += intakeSeconds;
+            }
+        }
+        return seconds;
+    }
+
+    /**
+     * Prints the time of every hand-made auto with the same model, to compare against
+     */
+    private static void printExistingAutos(File autoDirectory, List<Leg> legs, double scoreSeconds, double intakeSeconds) throws IOException {
+        File[] autoFiles = autoDirectory.listFiles((dir, name) -> name.endsWith(".auto") && !name.startsWith(AUTO_PREFIX));
+        for (File file : autoFiles == null ? new File[0] : autoFiles) {
+            JsonNode commands = new ObjectMapper().readTree(file).path("command").path("data").path("commands");
+            List<Leg> chain = new ArrayList<>();
+            for (JsonNode command : commands) {
+                String pathName = command.path("data").path("pathName").asText(null);
+                legs.stream().filter(leg -> leg.name.equals(pathName)).findFirst().ifPresent(chain::add);
+            }
+            if (!chain.isEmpty()) {
+                System.out.printf("existing %s: %.2f s%n", file.getName(), sequenceSeconds(chain, scoreSeconds, intakeSeconds));
+            }
+        }
+    }
+
+    /**
+     * Writes a sequential auto in the format of the PathPlanner GUI, with the named commands the
+     * hand-made autos use
+     */
+    private static void writeAuto(File file, Sequence sequence) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode auto = mapper.createObjectNode();
+        auto.put("version", "2025.0");
+        ObjectNode command = auto.putObject("command");
+        command.put("type", "sequential");
+        ArrayNode commands = command.putObject("data").putArray("commands");
+        for (int i = 0; i < sequence.legs.size(); i++) {
+            Leg leg = sequence.legs.get(i);
+            ObjectNode path = commands.addObject();
+            path.put("type", "path");
+            path.putObject("data").put("pathName", leg.name);
+            if (!leg.toStation) {
+                addNamedCommand(commands, "scoreCoral");
+            } else if (i < sequence.legs.size() - 1) {
+                addNamedCommand(commands, "prepareShooter");
+            }
+        }
+        auto.put("resetOdom", true);
+        auto.put("folder", AUTO_FOLDER);
+        auto.put("choreoAuto", false);
+        try (Writer writer = new FileWriter(file)) {
+            mapper.writeValue(writer, auto);
+        }
+    }
+
+    private static void addNamedCommand(ArrayNode commands, String name) {
+        ObjectNode named = commands.addObject();
+        named.put("type", "named");
+        named.putObject("data").put("name", name);
+    }
+}
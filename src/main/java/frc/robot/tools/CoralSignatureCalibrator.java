@@ -0,0 +1,262 @@
+package frc.robot.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.Constants.ShooterConstants;
+import frc.robot.subsystems.CoralSignatureDetector;
+
+/**
+ * Desktop tool that calibrates the motor signature coral detection from logged intakes.
+ * Every intake logged by {@link CoralSignatureDetector} in which the color sensor saw the coral
+ * arrive is split at that moment. Before it the wheels spin freely, which gives their baseline and
+ * how far the current and velocity wander without a coral; just after it the coral is in the wheels,
+ * which gives how far they move with one. The thresholds are put halfway between the largest free
+ * spinning excursion and the smallest loaded one, and every intake is replayed against them to
+ * show how late the motors would have seen the coral after the sensor did. Log the intakes with the
+ * Shooter/Calibrate signature switch on, which keeps the wheels pulling for a moment after the
+ * coral is detected so the log has it in the wheels.
+ *
+ * Usage: ./gradlew calibrateCoralSignature -Plogs=/path/to/logs
+ */
+public final class CoralSignatureCalibrator {
+    // samples further apart than this belong to different intakes
+    private static final double INTAKE_GAP_SECONDS = 0.05;
+    // the wheels are spinning up for this long after an intake starts
+    private static final double SPIN_UP_SECONDS = 0.3;
+    // the free spinning window ends this long before the sensor edge, the loaded window starts then
+    private static final double EDGE_MARGIN_SECONDS = 0.05;
+    // how long after the sensor edge the wheels keep pulling the coral in calibration logs
+    private static final double LOADED_WINDOW_SECONDS = 0.15;
+
+    private CoralSignatureCalibrator() {}
+
+    private static final class Sample {
+        final double timestampSeconds;
+        final double current;
+        final double velocity;
+        final boolean present;
+
+        Sample(double timestampSeconds, double current, double velocity, boolean present) {
+            this.timestampSeconds = timestampSeconds;
+            this.current = current;
+            this.velocity = velocity;
+            this.present = present;
+        }
+    }
+
+    /**
+     * How far one intake's current and velocity moved from the baseline, free spinning and loaded
+     */
+    private static final class Intake {
+        final String name;
+        final double freeCurrentRise;
+        final double freeVelocityDip;
+        final double loadedCurrentRise;
+        final double loadedVelocityDip;
+        final List<Sample> loadedSamples;
+        final double baselineCurrent;
+        final double baselineVelocity;
+        final double edgeTimestampSeconds;
+
+        Intake(String name, double freeCurrentRise, double freeVelocityDip, double loadedCurrentRise,
+                double loadedVelocityDip, List<Sample> loadedSamples, double baselineCurrent,
+                double baselineVelocity, double edgeTimestampSeconds) {
+            this.name = name;
+            this.freeCurrentRise = freeCurrentRise;
+            this.freeVelocityDip = freeVelocityDip;
+            this.loadedCurrentRise = loadedCurrentRise;
+            this.loadedVelocityDip = loadedVelocityDip;
+            this.loadedSamples = loadedSamples;
+            this.baselineCurrent = baselineCurrent;
+            this.baselineVelocity = baselineVelocity;
+            this.edgeTimestampSeconds = edgeTimestampSeconds;
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: CoralSignatureCalibrator <.wpilog file or directory>");
+            System.exit(1);
+        }
+
+        List<Intake> intakes = new ArrayList<>();
+        for (File file : listLogs(new File(args[0]))) {
+            List<List<Sample>> runs = readIntakes(file);
+            for (int i = 0; i < runs.size(); i++) {
+                Intake intake = measure(file.getName() + " #" + (i + 1), runs.get(i));
+                if (intake != null) {
+                    intakes.add(intake);
+                }
+            }
+        }
+        if (intakes.isEmpty()) {
+            System.err.println("No logged intakes with a color sensor edge found");
+            System.exit(1);
+        }
+
+        double maxFreeCurrent = 0;
+        double maxFreeDip = 0;
+        double minLoadedCurrent = Double.MAX_VALUE;
+        double minLoadedDip = Double.MAX_VALUE;
+        System.out.println("intake, free rise (A), loaded rise (A), free dip, loaded dip");
+        for (Intake intake : intakes) {
+            System.out.printf(Locale.ROOT, "%s, %.2f, %.2f, %.3f, %.3f%n", intake.name,
+                intake.freeCurrentRise, intake.loadedCurrentRise, intake.freeVelocityDip, intake.loadedVelocityDip);
+            maxFreeCurrent = Math.max(maxFreeCurrent, intake.freeCurrentRise);
+            maxFreeDip = Math.max(maxFreeDip, intake.freeVelocityDip);
+            minLoadedCurrent = Math.min(minLoadedCurrent, intake.loadedCurrentRise);
+            minLoadedDip = Math.min(minLoadedDip, intake.loadedVelocityDip);
+        }
+
+        // a signal that does not separate free from loaded is disabled with an unreachable threshold
+        double currentRise = minLoadedCurrent > maxFreeCurrent ? (minLoadedCurrent + maxFreeCurrent) / 2 : Double.POSITIVE_INFINITY;
+        double velocityDip = minLoadedDip > maxFreeDip ? (minLoadedDip + maxFreeDip) / 2 : 1.0;
+        if (Double.isInfinite(currentRise)) {
+            System.out.println("The current does not separate free spinning from loaded intakes");
+        }
+        if (velocityDip >= 1.0) {
+            System.out.println("The velocity does not separate free spinning from loaded intakes");
+        }
+
+        System.out.println("intake, delay after the sensor (ms) with current, velocity");
+        for (Intake intake : intakes) {
+            System.out.printf(Locale.ROOT, "%s, %s, %s%n", intake.name,
+                formatDelay(getDelay(intake, currentRise, Double.NaN)),
+                formatDelay(getDelay(intake, Double.POSITIVE_INFINITY, velocityDip)));
+        }
+
+        System.out.printf(Locale.ROOT, "Current: ShooterConstants.CORAL_CURRENT_RISE_AMPS = %.2f (now %.2f)%n",
+            currentRise, ShooterConstants.CORAL_CURRENT_RISE_AMPS);
+        System.out.printf(Locale.ROOT, "Velocity: ShooterConstants.CORAL_VELOCITY_DIP = %.3f (now %.3f)%n",
+            velocityDip, ShooterConstants.CORAL_VELOCITY_DIP);
+    }
+
+    private static List<File> listLogs(File file) {
+        List<File> logs = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] children = file.listFiles((dir, name) -> name.endsWith(".wpilog"));
+            if (children != null) {
+                for (File child : children) {
+                    logs.add(child);
+                }
+            }
+        } else {
+            logs.add(file);
+        }
+        return logs;
+    }
+
+    /**
+     * @return the samples of every intake in the log, split at the gaps between them
+     */
+    private static List<List<Sample>> readIntakes(File file) throws IOException {
+        DataLogReader reader = new DataLogReader(file.getPath());
+        List<List<Sample>> intakes = new ArrayList<>();
+        if (!reader.isValid()) {
+            System.err.println("Skipping invalid log " + file);
+            return intakes;
+        }
+
+        int signatureEntry = -1;
+        List<Sample> intake = new ArrayList<>();
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                if (start.name.equals(CoralSignatureDetector.LOG_ENTRY)) {
+                    signatureEntry = start.entry;
+                }
+                continue;
+            }
+            if (record.isControl() || record.getEntry() != signatureEntry) {
+                continue;
+            }
+            double[] data = record.getDoubleArray();
+            double timestamp = record.getTimestamp() * 1e-6;
+            boolean intaking = data[2] == CoralSignatureDetector.Mode.INTAKE.ordinal();
+            boolean gap = !intake.isEmpty() && timestamp - intake.get(intake.size() - 1).timestampSeconds > INTAKE_GAP_SECONDS;
+            if ((!intaking || gap) && !intake.isEmpty()) {
+                intakes.add(intake);
+                intake = new ArrayList<>();
+            }
+            // intakes without a color sensor have no ground truth
+            if (intaking && data[3] >= 0) {
+                intake.add(new Sample(timestamp, data[0], data[1], data[3] > 0));
+            }
+        }
+        if (!intake.isEmpty()) {
+            intakes.add(intake);
+        }
+        return intakes;
+    }
+
+    /**
+     * @return the excursions of an intake, or null if it has no sensor edge after spinning up
+     */
+    private static Intake measure(String name, List<Sample> samples) {
+        double startSeconds = samples.get(0).timestampSeconds;
+        double edgeSeconds = Double.NaN;
+        for (int i = 1; i < samples.size(); i++) {
+            if (samples.get(i).present && !samples.get(i - 1).present) {
+                edgeSeconds = samples.get(i).timestampSeconds;
+                break;
+            }
+        }
+        if (Double.isNaN(edgeSeconds) || edgeSeconds - EDGE_MARGIN_SECONDS < startSeconds + SPIN_UP_SECONDS) {
+            return null;
+        }
+
+        List<Sample> free = new ArrayList<>();
+        List<Sample> loaded = new ArrayList<>();
+        for (Sample sample : samples) {
+            double time = sample.timestampSeconds;
+            if (time > startSeconds + SPIN_UP_SECONDS && time < edgeSeconds - EDGE_MARGIN_SECONDS) {
+                free.add(sample);
+            } else if (time >= edgeSeconds - EDGE_MARGIN_SECONDS && time < edgeSeconds + LOADED_WINDOW_SECONDS) {
+                loaded.add(sample);
+            }
+        }
+        if (free.isEmpty() || loaded.isEmpty()) {
+            return null;
+        }
+
+        double baselineCurrent = free.stream().mapToDouble(sample -> sample.current).average().getAsDouble();
+        double baselineVelocity = free.stream().mapToDouble(sample -> sample.velocity).average().getAsDouble();
+        return new Intake(name,
+            free.stream().mapToDouble(sample -> sample.current - baselineCurrent).max().getAsDouble(),
+            free.stream().mapToDouble(sample -> 1 - sample.velocity / baselineVelocity).max().getAsDouble(),
+            loaded.stream().mapToDouble(sample -> sample.current - baselineCurrent).max().getAsDouble(),
+            loaded.stream().mapToDouble(sample -> 1 - sample.velocity / baselineVelocity).max().getAsDouble(),
+            loaded, baselineCurrent, baselineVelocity, edgeSeconds);
+    }
+
+    /**
+     * @return how long after the sensor edge the thresholds see the coral, held for the entry
+     *     debounce, or NaN if they never do
+     */
+    private static double getDelay(Intake intake, double currentRise, double velocityDip) {
+        double loadStart = Double.NaN;
+        for (Sample sample : intake.loadedSamples) {
+            boolean load = sample.current - intake.baselineCurrent > currentRise
+                || (!Double.isNaN(velocityDip) && sample.velocity < intake.baselineVelocity * (1 - velocityDip));
+            if (!load) {
+                loadStart = Double.NaN;
+            } else if (Double.isNaN(loadStart)) {
+                loadStart = sample.timestampSeconds;
+            }
+            if (load && sample.timestampSeconds - loadStart >= ShooterConstants.CORAL_ENTRY_DEBOUNCE_SECONDS) {
+                return sample.timestampSeconds - intake.edgeTimestampSeconds;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static String formatDelay(double delaySeconds) {
+        return Double.isNaN(delaySeconds) ? "missed" : String.format(Locale.ROOT, "%.0f", delaySeconds * 1000);
+    }
+}
@@ -0,0 +1,64 @@
+package frc.robot.tools;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.Constants.ElevatorConstants;
+import frc.robot.subsystems.ElevatorSubsystem;
+
+/**
+ * Desktop benchmark for the elevator controller against the physics simulation.
+ * Drives the simulated elevator through a sequence of level changes in stepped sim time, faster
+ * than real time, and prints the time to settle and overshoot of every move.
+ *
+ * Usage: ./gradlew elevatorBenchmark
+ */
+public final class ElevatorBenchmark {
+    private static final int[][] MOVES = {{0, 3}, {3, 0}, {0, 1}, {1, 2}, {2, 3}, {3, 1}, {1, 0}};
+    private static final double TIMEOUT_SECONDS = 5.0;
+    private static final double LOOP_SECONDS = 0.02;
+
+    private ElevatorBenchmark() {}
+
+    public static void main(String... args) {
+        if (!HAL.initialize(500, 0)) {
+            System.err.println("Could not initialize the HAL");
+            System.exit(1);
+        }
+        SimHooks.pauseTiming();
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+
+        ElevatorSubsystem elevator = new ElevatorSubsystem(
+            ElevatorConstants.ELEVATOR_PRIMARY_MOTOR_ID,
+            ElevatorConstants.ELEVATOR_SECONDARY_MOTOR_ID,
+            ElevatorConstants.ELEVATOR_TOP_LIMIT_SWITCH_ID,
+            ElevatorConstants.ELEVATOR_BOTTOM_LIMIT_SWITCH_ID);
+
+        System.out.println("from, to, settle (s), profile (s), overshoot");
+        double totalSeconds = 0;
+        for (int[] move : MOVES) {
+            elevator.goToLevel(move[1]);
+            double elapsed = 0;
+            while (!elevator.isMoveSettled() && elapsed < TIMEOUT_SECONDS) {
+                elevator.periodic();
+                elevator.simulationPeriodic();
+                SimHooks.stepTiming(LOOP_SECONDS);
+                elapsed += LOOP_SECONDS;
+            }
+            double profileSeconds = ElevatorSubsystem.estimateTravelSeconds(
+                ElevatorSubsystem.getLevelHeight(move[0]), ElevatorSubsystem.getLevelHeight(move[1]));
+            if (elevator.isMoveSettled()) {
+                totalSeconds += elevator.getLastSettleSeconds();
+                System.out.printf("L%d, L%d, %.2f, %.2f, %.2f%n", move[0], move[1],
+                    elevator.getLastSettleSeconds(), profileSeconds, elevator.getLastOvershoot());
+            } else {
+                totalSeconds += TIMEOUT_SECONDS;
+                System.out.printf("L%d, L%d, did not settle in %.1f s, %.2f, %.2f%n", move[0], move[1],
+                    TIMEOUT_SECONDS, profileSeconds, elevator.getLastOvershoot());
+            }
+        }
+        System.out.printf("Total %.2f s%n", totalSeconds);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,301 @@
+package frc.robot.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.PoseEstimator;
+
+/**
+ * Desktop tool that replays logged pose estimator inputs and tunes its standard deviations.
+ * Reads the raw odometry and vision entries logged by {@link PoseEstimator} from .wpilog files,
+ * replays them through a {@link SwerveDrivePoseEstimator} for every combination in a parameter grid
+ * (in parallel, far faster than real time) and prints the best parameter sets.
+ *
+ * When the log has a ground truth pose (simulation) the score is the RMS position error against it.
+ * Otherwise the score is the RMS vision residual: how far each vision measurement was from the
+ * estimate just before it was fused, which rewards an estimator that predicts vision well.
+ * Resets of the estimator (auto starts, field resets) are replayed where they happened in the log.
+ *
+ * Usage: ./gradlew poseEstimatorReplay -Plogs=/path/to/logs
+ */
+public final class PoseEstimatorReplay {
+    private static final double[] STATE_XY_GRID = {0.02, 0.05, 0.1, 0.2};
+    private static final double[] STATE_THETA_DEGREES_GRID = {1, 5, 10};
+    private static final double[] VISION_XY_GRID = {0.1, 0.3, 0.5, 1.0, 2.0};
+    private static final double[] VISION_THETA_DEGREES_GRID = {5, 10, 30, 1000};
+    private static final int RESULTS_TO_PRINT = 10;
+
+    private PoseEstimatorReplay() {}
+
+    /**
+     * One logged input, either an odometry update, a vision measurement, a ground truth pose or a reset
+     */
+    private static final class Sample {
+        final double timestampSeconds;
+        final Rotation2d gyro;
+        final SwerveModulePosition[] modulePositions;
+        final Pose2d pose;
+        final double visionTimestampSeconds;
+        final boolean isTruth;
+        final boolean isReset;
+
+        Sample(double timestampSeconds, Rotation2d gyro, SwerveModulePosition[] modulePositions,
+                Pose2d pose, double visionTimestampSeconds, boolean isTruth, boolean isReset) {
+            this.timestampSeconds = timestampSeconds;
+            this.gyro = gyro;
+            this.modulePositions = modulePositions;
+            this.pose = pose;
+            this.visionTimestampSeconds = visionTimestampSeconds;
+            this.isTruth = isTruth;
+            this.isReset = isReset;
+        }
+
+        boolean isOdometry() {
+            return modulePositions != null;
+        }
+    }
+
+    private static final class Recording {
+        final String name;
+        final List<Sample> samples;
+        final Pose2d initialPose;
+        final boolean hasTruth;
+
+        Recording(String name, List<Sample> samples, Pose2d initialPose, boolean hasTruth) {
+            this.name = name;
+            this.samples = samples;
+            this.initialPose = initialPose;
+            this.hasTruth = hasTruth;
+        }
+    }
+
+    private static final class Result {
+        final double stateXY;
+        final double stateTheta;
+        final double visionXY;
+        final double visionTheta;
+        double squaredErrorSum = 0;
+        long errorCount = 0;
+        double maxError = 0;
+
+        Result(double stateXY, double stateTheta, double visionXY, double visionTheta) {
+            this.stateXY = stateXY;
+            this.stateTheta = stateTheta;
+            this.visionXY = visionXY;
+            this.visionTheta = visionTheta;
+        }
+
+        void addError(double error) {
+            squaredErrorSum += error * error;
+            errorCount++;
+            maxError = Math.max(maxError, error);
+        }
+
+        double rmsError() {
+            return errorCount == 0 ? Double.MAX_VALUE : Math.sqrt(squaredErrorSum / errorCount);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: PoseEstimatorReplay <.wpilog file or directory>...");
+            System.exit(1);
+        }
+
+        List<Recording> recordings = new ArrayList<>();
+        for (String arg : args) {
+            for (File file : listLogs(new File(arg))) {
+                Recording recording = readRecording(file);
+                if (recording != null) {
+                    recordings.add(recording);
+                }
+            }
+        }
+        if (recordings.isEmpty()) {
+            System.err.println("No logs with pose estimator inputs found");
+            System.exit(1);
+        }
+        boolean useTruth = recordings.stream().allMatch(recording -> recording.hasTruth);
+        System.out.println("Loaded " + recordings.size() + " logs, scoring by "
+            + (useTruth ? "RMS error against ground truth" : "RMS vision residual"));
+
+        List<Result> grid = new ArrayList<>();
+        for (double stateXY : STATE_XY_GRID) {
+            for (double stateTheta : STATE_THETA_DEGREES_GRID) {
+                for (double visionXY : VISION_XY_GRID) {
+                    for (double visionTheta : VISION_THETA_DEGREES_GRID) {
+                        grid.add(new Result(stateXY, Math.toRadians(stateTheta), visionXY, Math.toRadians(visionTheta)));
+                    }
+                }
+            }
+        }
+        Result current = new Result(
+            PoseEstimator.stateStdDevs.get(0, 0), PoseEstimator.stateStdDevs.get(2, 0),
+            PoseEstimator.visionMeasurementStdDevs.get(0, 0), PoseEstimator.visionMeasurementStdDevs.get(2, 0));
+        grid.add(current);
+
+        long startNanos = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<?>> futures = new ArrayList<>();
+        for (Result result : grid) {
+            futures.add(executor.submit(() -> {
+                for (Recording recording : recordings) {
+                    replay(recording, result, useTruth);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        System.out.printf("Replayed %d parameter sets in %.1f s%n", grid.size(), (System.nanoTime() - startNanos) * 1e-9);
+
+        grid.sort(Comparator.comparingDouble(Result::rmsError));
+        System.out.println("state xy, state theta (deg), vision xy, vision theta (deg), rms error (m), max error (m)");
+        for (int i = 0; i < Math.min(RESULTS_TO_PRINT, grid.size()); i++) {
+            printResult(grid.get(i));
+        }
+        System.out.println("Current robot values:");
+        printResult(current);
+    }
+
+    private static void printResult(Result result) {
+        System.out.printf("%.3f, %.1f, %.3f, %.1f, %.4f, %.4f%n",
+            result.stateXY, Math.toDegrees(result.stateTheta),
+            result.visionXY, Math.toDegrees(result.visionTheta),
+            result.rmsError(), result.maxError);
+    }
+
+    private static List<File> listLogs(File file) {
+        List<File> logs = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] children = file.listFiles((dir, name) -> name.endsWith(".wpilog"));
+            if (children != null) {
+                for (File child : children) {
+                    logs.add(child);
+                }
+            }
+        } else {
+            logs.add(file);
+        }
+        return logs;
+    }
+
+    private static Recording readRecording(File file) throws IOException {
+        DataLogReader reader = new DataLogReader(file.getPath());
+        if (!reader.isValid()) {
+            System.err.println("Skipping invalid log " + file);
+            return null;
+        }
+
+        Map<Integer, String> entryNames = new HashMap<>();
+        List<Sample> samples = new ArrayList<>();
+        Pose2d initialPose = null;
+        boolean hasTruth = false;
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                entryNames.put(start.entry, start.name);
+                continue;
+            }
+            if (record.isControl()) {
+                continue;
+            }
+            String name = entryNames.get(record.getEntry());
+            if (name == null) {
+                continue;
+            }
+            double timestamp = record.getTimestamp() * 1e-6;
+            if (name.equals(PoseEstimator.ODOMETRY_LOG_ENTRY)) {
+                double[] data = record.getDoubleArray();
+                SwerveModulePosition[] positions = new SwerveModulePosition[(data.length - 1) / 2];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = new SwerveModulePosition(data[1 + 2 * i], new Rotation2d(data[2 + 2 * i]));
+                }
+                samples.add(new Sample(timestamp, new Rotation2d(data[0]), positions, null, 0, false, false));
+            } else if (name.equals(PoseEstimator.VISION_LOG_ENTRY)) {
+                double[] data = record.getDoubleArray();
+                samples.add(new Sample(timestamp, null, null,
+                    new Pose2d(data[0], data[1], new Rotation2d(data[2])), data[3], false, false));
+            } else if (name.equals(DriveSubsystem.TRUE_POSE_LOG_ENTRY)) {
+                double[] data = record.getDoubleArray();
+                samples.add(new Sample(timestamp, null, null,
+                    new Pose2d(data[0], data[1], new Rotation2d(data[2])), 0, true, false));
+                hasTruth = true;
+            } else if (name.equals(PoseEstimator.RESET_LOG_ENTRY)) {
+                double[] data = record.getDoubleArray();
+                samples.add(new Sample(timestamp, null, null,
+                    new Pose2d(data[0], data[1], new Rotation2d(data[2])), 0, false, true));
+            } else if (name.equals(PoseEstimator.ESTIMATE_LOG_ENTRY) && initialPose == null) {
+                double[] data = record.getDoubleArray();
+                initialPose = new Pose2d(data[0], data[1], new Rotation2d(data[2]));
+            }
+        }
+        if (samples.stream().noneMatch(Sample::isOdometry)) {
+            return null;
+        }
+        return new Recording(file.getName(), samples, initialPose == null ? new Pose2d() : initialPose, hasTruth);
+    }
+
+    private static void replay(Recording recording, Result result, boolean useTruth) {
+        SwerveDriveKinematics kinematics = new SwerveDriveKinematics(
+            DriveConstants.FRONT_LEFT_LOCATION, DriveConstants.FRONT_RIGHT_LOCATION,
+            DriveConstants.BACK_LEFT_LOCATION, DriveConstants.BACK_RIGHT_LOCATION);
+
+        SwerveDrivePoseEstimator estimator = null;
+        Sample lastOdometry = null;
+        Pose2d initialPose = recording.initialPose;
+        for (Sample sample : recording.samples) {
+            if (sample.isOdometry()) {
+                if (estimator == null) {
+                    estimator = new SwerveDrivePoseEstimator(
+                        kinematics, sample.gyro, sample.modulePositions, initialPose,
+                        VecBuilder.fill(result.stateXY, result.stateXY, result.stateTheta),
+                        VecBuilder.fill(result.visionXY, result.visionXY, result.visionTheta));
+                }
+                estimator.updateWithTime(sample.timestampSeconds, sample.gyro, sample.modulePositions);
+                lastOdometry = sample;
+            } else if (sample.isReset) {
+                // the robot reset with the gyro and modules where the last odometry update left them
+                if (estimator == null) {
+                    initialPose = sample.pose;
+                } else {
+                    estimator.resetPosition(lastOdometry.gyro, lastOdometry.modulePositions, sample.pose);
+                }
+            } else if (estimator == null) {
+                continue;
+            } else if (sample.isTruth) {
+                if (useTruth) {
+                    result.addError(estimator.getEstimatedPosition().getTranslation()
+                        .getDistance(sample.pose.getTranslation()));
+                }
+            } else {
+                if (!useTruth) {
+                    var predicted = estimator.sampleAt(sample.visionTimestampSeconds);
+                    if (predicted.isPresent()) {
+                        result.addError(predicted.get().getTranslation().getDistance(sample.pose.getTranslation()));
+                    }
+                }
+                estimator.addVisionMeasurement(sample.pose, sample.visionTimestampSeconds);
+            }
+        }
+    }
+}
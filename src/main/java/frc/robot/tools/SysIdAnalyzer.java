@@ -0,0 +1,288 @@
+package frc.robot.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.util.SysIdSampler;
+
+/**
+ * Desktop tool that fits feedforward gains to the SysId tests sampled by {@link SysIdSampler}.
+ * The samples of every motor are split into test runs at the gaps between them, samples the motor
+ * controller had not updated yet are dropped, and the acceleration at each sample is the slope of
+ * a line through the velocities around it. For every mechanism, ordinary least squares over all its
+ * motors and runs fits
+ *   volts = kS * sign(velocity) + kV * velocity + kA * acceleration (+ kG for the elevator)
+ * and the gains are printed, and written into Configs.Feedforward when asked to.
+ *
+ * Usage: ./gradlew sysIdAnalyzer -Plogs=/path/to/logs [-Pwrite=true]
+ */
+public final class SysIdAnalyzer {
+    private static final String CONFIGS_FILE = "src/main/java/frc/robot/subsystems/Configs.java";
+    // the only mechanism working against gravity
+    private static final String GRAVITY_MECHANISM = "elevator";
+    // samples further apart than this belong to different test runs
+    private static final double RUN_GAP_SECONDS = 0.05;
+    // samples on each side of the line fit for the acceleration
+    private static final int ACCELERATION_WINDOW = 4;
+    // samples slower than this fraction of the fastest are mostly static friction and noise
+    private static final double MIN_VELOCITY_FRACTION = 0.05;
+
+    private SysIdAnalyzer() {}
+
+    private static final class Sample {
+        final double timestampSeconds;
+        final double volts;
+        final double position;
+        final double velocity;
+
+        Sample(double timestampSeconds, double volts, double position, double velocity) {
+            this.timestampSeconds = timestampSeconds;
+            this.volts = volts;
+            this.position = position;
+            this.velocity = velocity;
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SysIdAnalyzer <.wpilog file or directory> [write]");
+            System.exit(1);
+        }
+        boolean write = args.length > 1 && Boolean.parseBoolean(args[1]);
+
+        // mechanism -> log and motor -> samples
+        Map<String, Map<String, List<Sample>>> mechanisms = new TreeMap<>();
+        for (File file : listLogs(new File(args[0]))) {
+            readSamples(file, mechanisms);
+        }
+        if (mechanisms.isEmpty()) {
+            System.err.println("No SysId samples found");
+            System.exit(1);
+        }
+
+        Map<String, Double> gains = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, List<Sample>>> mechanism : mechanisms.entrySet()) {
+            String name = mechanism.getKey();
+            boolean gravity = name.equals(GRAVITY_MECHANISM);
+            double[] fit = fit(name, mechanism.getValue(), gravity);
+            if (fit == null) {
+                continue;
+            }
+            String prefix = name.toUpperCase(Locale.ROOT);
+            gains.put(prefix + "_KS", fit[0]);
+            gains.put(prefix + "_KV", fit[1]);
+            gains.put(prefix + "_KA", fit[2]);
+            if (gravity) {
+                gains.put(prefix + "_KG", fit[3]);
+            }
+        }
+
+        System.out.println("Configs.Feedforward:");
+        for (Map.Entry<String, Double> gain : gains.entrySet()) {
+            System.out.printf(Locale.ROOT, "    public static final double %s = %s;%n", gain.getKey(), format(gain.getValue()));
+        }
+        if (write) {
+            writeConfigs(gains);
+        }
+    }
+
+    private static List<File> listLogs(File file) {
+        List<File> logs = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] children = file.listFiles((dir, name) -> name.endsWith(".wpilog"));
+            if (children != null) {
+                for (File child : children) {
+                    logs.add(child);
+                }
+            }
+        } else {
+            logs.add(file);
+        }
+        return logs;
+    }
+
+    private static void readSamples(File file, Map<String, Map<String, List<Sample>>> mechanisms) throws IOException {
+        DataLogReader reader = new DataLogReader(file.getPath());
+        if (!reader.isValid()) {
+            System.err.println("Skipping invalid log " + file);
+            return;
+        }
+
+        Map<Integer, String> entryNames = new HashMap<>();
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                if (start.name.startsWith(SysIdSampler.LOG_PREFIX)) {
+                    entryNames.put(start.entry, start.name.substring(SysIdSampler.LOG_PREFIX.length()));
+                }
+                continue;
+            }
+            if (record.isControl()) {
+                continue;
+            }
+            String name = entryNames.get(record.getEntry());
+            int separator = name == null ? -1 : name.indexOf('/');
+            if (separator < 0) {
+                continue;
+            }
+            double[] data = record.getDoubleArray();
+            mechanisms.computeIfAbsent(name.substring(0, separator), key -> new TreeMap<>())
+                .computeIfAbsent(file.getName() + "/" + name.substring(separator + 1), key -> new ArrayList<>())
+                .add(new Sample(record.getTimestamp() * 1e-6, data[0], data[1], data[2]));
+        }
+    }
+
+    /**
+     * @return kS, kV, kA and kG when fitting gravity, or null if there are too few samples
+     */
+    private static double[] fit(String mechanism, Map<String, List<Sample>> motors, boolean gravity) {
+        double maxVelocity = 0;
+        for (List<Sample> samples : motors.values()) {
+            for (Sample sample : samples) {
+                maxVelocity = Math.max(maxVelocity, Math.abs(sample.velocity));
+            }
+        }
+        double minVelocity = maxVelocity * MIN_VELOCITY_FRACTION;
+
+        List<double[]> rows = new ArrayList<>();
+        List<Double> volts = new ArrayList<>();
+        int runs = 0;
+        for (List<Sample> samples : motors.values()) {
+            for (List<Sample> run : splitRuns(dropStale(samples))) {
+                runs++;
+                for (int i = ACCELERATION_WINDOW; i < run.size() - ACCELERATION_WINDOW; i++) {
+                    Sample sample = run.get(i);
+                    if (Math.abs(sample.velocity) < minVelocity) {
+                        continue;
+                    }
+                    double acceleration = getAcceleration(run, i);
+                    rows.add(gravity
+                        ? new double[] {Math.signum(sample.velocity), sample.velocity, acceleration, 1}
+                        : new double[] {Math.signum(sample.velocity), sample.velocity, acceleration});
+                    volts.add(sample.volts);
+                }
+            }
+        }
+        int columns = gravity ? 4 : 3;
+        if (rows.size() <= columns) {
+            System.err.println("Not enough samples to fit " + mechanism);
+            return null;
+        }
+
+        SimpleMatrix x = new SimpleMatrix(rows.size(), columns);
+        SimpleMatrix y = new SimpleMatrix(rows.size(), 1);
+        double meanVolts = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            for (int j = 0; j < columns; j++) {
+                x.set(i, j, rows.get(i)[j]);
+            }
+            y.set(i, 0, volts.get(i));
+            meanVolts += volts.get(i) / rows.size();
+        }
+        SimpleMatrix gains = x.solve(y);
+
+        SimpleMatrix residuals = y.minus(x.mult(gains));
+        double residualSquares = 0;
+        double totalSquares = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            residualSquares += residuals.get(i, 0) * residuals.get(i, 0);
+            totalSquares += (volts.get(i) - meanVolts) * (volts.get(i) - meanVolts);
+        }
+        double[] fit = new double[columns];
+        for (int j = 0; j < columns; j++) {
+            fit[j] = gains.get(j, 0);
+        }
+        System.out.printf(Locale.ROOT, "%s: kS %.4f, kV %.4f, kA %.4f%s, r2 %.4f, rms %.3f V from %d samples in %d runs%n",
+            mechanism, fit[0], fit[1], fit[2], gravity ? String.format(Locale.ROOT, ", kG %.4f", fit[3]) : "",
+            1 - residualSquares / totalSquares, Math.sqrt(residualSquares / rows.size()), rows.size(), runs);
+        return fit;
+    }
+
+    /**
+     * Drops the samples taken before the motor controller reported a new position or velocity
+     */
+    private static List<Sample> dropStale(List<Sample> samples) {
+        List<Sample> fresh = new ArrayList<>();
+        for (Sample sample : samples) {
+            Sample last = fresh.isEmpty() ? null : fresh.get(fresh.size() - 1);
+            if (last == null || last.position != sample.position || last.velocity != sample.velocity) {
+                fresh.add(sample);
+            }
+        }
+        return fresh;
+    }
+
+    private static List<List<Sample>> splitRuns(List<Sample> samples) {
+        List<List<Sample>> runs = new ArrayList<>();
+        List<Sample> run = new ArrayList<>();
+        for (Sample sample : samples) {
+            if (!run.isEmpty() && sample.timestampSeconds - run.get(run.size() - 1).timestampSeconds > RUN_GAP_SECONDS) {
+                runs.add(run);
+                run = new ArrayList<>();
+            }
+            run.add(sample);
+        }
+        if (!run.isEmpty()) {
+            runs.add(run);
+        }
+        return runs;
+    }
+
+    /**
+     * Slope of the least squares line through the velocities around a sample
+     */
+    private static double getAcceleration(List<Sample> run, int index) {
+        double meanTime = 0;
+        double meanVelocity = 0;
+        int count = 2 * ACCELERATION_WINDOW + 1;
+        for (int i = index - ACCELERATION_WINDOW; i <= index + ACCELERATION_WINDOW; i++) {
+            meanTime += run.get(i).timestampSeconds / count;
+            meanVelocity += run.get(i).velocity / count;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = index - ACCELERATION_WINDOW; i <= index + ACCELERATION_WINDOW; i++) {
+            double dt = run.get(i).timestampSeconds - meanTime;
+            covariance += dt * (run.get(i).velocity - meanVelocity);
+            variance += dt * dt;
+        }
+        return covariance / variance;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    /**
+     * Replaces the value of every fitted gain in Configs.Feedforward
+     */
+    private static void writeConfigs(Map<String, Double> gains) throws IOException {
+        Path path = Path.of(CONFIGS_FILE);
+        String source = Files.readString(path);
+        for (Map.Entry<String, Double> gain : gains.entrySet()) {
+            Matcher matcher = Pattern.compile("(public static final double " + gain.getKey() + " = )[^;]+;").matcher(source);
+            if (!matcher.find()) {
+                System.err.println("No " + gain.getKey() + " in " + CONFIGS_FILE);
+                continue;
+            }
+            source = matcher.replaceFirst(Matcher.quoteReplacement(matcher.group(1) + format(gain.getValue()) + ";"));
+        }
+        Files.writeString(path, source);
+        System.out.println("Wrote the gains to " + CONFIGS_FILE);
+    }
+}
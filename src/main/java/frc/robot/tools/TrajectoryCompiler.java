@@ -0,0 +1,219 @@
+package frc.robot.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pathplanner.lib.config.RobotConfig;
+import com.pathplanner.lib.events.EventMarker;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectory;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
+import com.pathplanner.lib.util.DriveFeedforwards;
+
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.util.CompiledTrajectoryFile;
+import frc.robot.util.DriveLimits;
+
+/**
+ * Build-time tool that compiles every PathPlanner path and auto in the deploy directory into the
+ * binary format read by {@link CompiledTrajectoryFile}. Trajectories are generated with the robot
+ * config from settings.json, for both alliances, at the physical limits of the drivetrain instead of
+ * the constraints drawn in the paths (see {@link DriveLimits}).
+ *
+ * Run by the compileTrajectories Gradle task before deploying or simulating.
+ */
+public final class TrajectoryCompiler {
+    private TrajectoryCompiler() {}
+
+    public static void main(String... args) throws Exception {
+        File pathPlannerDirectory = new File(Filesystem.getDeployDirectory(), "pathplanner");
+        File output = new File(Filesystem.getDeployDirectory(), CompiledTrajectoryFile.FILE_NAME);
+
+        RobotConfig config = RobotConfig.fromGUISettings();
+
+        List<String> pathNames = listNames(new File(pathPlannerDirectory, "paths"), ".path");
+        List<String> autoNames = listNames(new File(pathPlannerDirectory, "autos"), ".auto");
+
+        ByteArrayOutputStream stateData = new ByteArrayOutputStream();
+        DataOutputStream states = new DataOutputStream(stateData);
+        ByteArrayOutputStream indexData = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexData);
+
+        index.writeInt(CompiledTrajectoryFile.MAGIC);
+        index.writeInt(CompiledTrajectoryFile.VERSION);
+
+        List<String> compiledPaths = new ArrayList<>();
+        ByteArrayOutputStream pathIndexData = new ByteArrayOutputStream();
+        DataOutputStream pathIndex = new DataOutputStream(pathIndexData);
+        for (String pathName : pathNames) {
+            PathPlannerPath bluePath = DriveLimits.withPhysicalLimits(PathPlannerPath.fromPathFile(pathName), config);
+            Optional<PathPlannerTrajectory> blue = bluePath.getIdealTrajectory(config);
+            Optional<PathPlannerTrajectory> red = bluePath.flipPath().getIdealTrajectory(config);
+            if (blue.isEmpty() || red.isEmpty()) {
+                System.err.println("Skipping " + pathName + ": it has no ideal starting state");
+                continue;
+            }
+
+            pathIndex.writeUTF(pathName);
+            List<EventMarker> markers = bluePath.getEventMarkers();
+            pathIndex.writeInt(markers.size());
+            for (EventMarker marker : markers) {
+                pathIndex.writeUTF(marker.triggerName());
+                pathIndex.writeDouble(timeAtPosition(blue.get(), marker.waypointRelativePos()));
+                pathIndex.writeDouble(marker.endWaypointRelativePos() >= 0
+                    ? timeAtPosition(blue.get(), marker.endWaypointRelativePos()) : -1);
+            }
+            for (PathPlannerTrajectory trajectory : List.of(blue.get(), red.get())) {
+                pathIndex.writeLong(states.size());
+                pathIndex.writeInt(trajectory.getStates().size());
+                for (PathPlannerTrajectoryState state : trajectory.getStates()) {
+                    writeState(states, state);
+                }
+            }
+            compiledPaths.add(pathName);
+            System.out.printf("Compiled %s: %d states, %.2f s%n",
+                pathName, blue.get().getStates().size(), blue.get().getTotalTimeSeconds());
+        }
+        index.writeInt(compiledPaths.size());
+        pathIndex.flush();
+        index.write(pathIndexData.toByteArray());
+
+        List<byte[]> compiledAutos = new ArrayList<>();
+        for (String autoName : autoNames) {
+            byte[] auto = compileAuto(new File(pathPlannerDirectory, "autos/" + autoName + ".auto"), autoName, compiledPaths);
+            if (auto != null) {
+                compiledAutos.add(auto);
+            }
+        }
+        index.writeInt(compiledAutos.size());
+        for (byte[] auto : compiledAutos) {
+            index.write(auto);
+        }
+
+        output.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(output)) {
+            index.flush();
+            states.flush();
+            indexData.writeTo(out);
+            stateData.writeTo(out);
+        }
+        System.out.println("Wrote " + compiledPaths.size() + " paths and " + compiledAutos.size()
+            + " autos to " + output + " (" + output.length() + " bytes)");
+    }
+
+    private static List<String> listNames(File directory, String extension) {
+        List<String> names = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(extension));
+        if (files != null) {
+            for (File file : files) {
+                names.add(file.getName().substring(0, file.getName().length() - extension.length()));
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * Converts a waypoint relative position along the path to the time the robot reaches it
+     */
+    private static double timeAtPosition(PathPlannerTrajectory trajectory, double waypointRelativePos) {
+        for (PathPlannerTrajectoryState state : trajectory.getStates()) {
+            if (state.waypointRelativePos >= waypointRelativePos) {
+                return state.timeSeconds;
+            }
+        }
+        return trajectory.getTotalTimeSeconds();
+    }
+
+    private static void writeState(DataOutputStream out, PathPlannerTrajectoryState state) throws IOException {
+        out.writeDouble(state.timeSeconds);
+        out.writeDouble(state.pose.getX());
+        out.writeDouble(state.pose.getY());
+        out.writeDouble(state.pose.getRotation().getRadians());
+        out.writeDouble(state.fieldSpeeds.vxMetersPerSecond);
+        out.writeDouble(state.fieldSpeeds.vyMetersPerSecond);
+        out.writeDouble(state.fieldSpeeds.omegaRadiansPerSecond);
+        out.writeDouble(state.linearVelocity);
+        out.writeDouble(state.heading.getRadians());
+
+        DriveFeedforwards feedforwards = state.feedforwards;
+        double[][] kinds = {
+            feedforwards.accelerationsMPSSq(),
+            feedforwards.linearForcesNewtons(),
+            feedforwards.torqueCurrentsAmps(),
+            feedforwards.robotRelativeForcesXNewtons(),
+            feedforwards.robotRelativeForcesYNewtons()
+        };
+        for (double[] values : kinds) {
+            for (int module = 0; module < CompiledTrajectoryFile.MODULE_COUNT; module++) {
+                out.writeDouble(values != null && module < values.length ? values[module] : 0);
+            }
+        }
+    }
+
+    /**
+     * Compiles a sequential auto into its list of steps
+     * @return the encoded auto, or null if it uses a command group the compiled autos do not support
+     */
+    private static byte[] compileAuto(File file, String autoName, List<String> compiledPaths) throws IOException {
+        JsonNode json = new ObjectMapper().readTree(file);
+        List<CompiledTrajectoryFile.Step> steps = new ArrayList<>();
+        if (!flattenSteps(json.get("command"), steps, compiledPaths)) {
+            System.err.println("Skipping auto " + autoName + ": only sequential autos of compiled paths are supported");
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(autoName);
+        out.writeBoolean(json.path("resetOdom").asBoolean(false));
+        out.writeInt(steps.size());
+        for (CompiledTrajectoryFile.Step step : steps) {
+            out.writeByte(step.type);
+            if (step.type == CompiledTrajectoryFile.STEP_WAIT) {
+                out.writeDouble(step.waitSeconds);
+            } else {
+                out.writeUTF(step.name);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static boolean flattenSteps(JsonNode command, List<CompiledTrajectoryFile.Step> steps, List<String> compiledPaths) {
+        String type = command.path("type").asText();
+        JsonNode data = command.path("data");
+        switch (type) {
+            case "sequential":
+                for (JsonNode child : data.path("commands")) {
+                    if (!flattenSteps(child, steps, compiledPaths)) {
+                        return false;
+                    }
+                }
+                return true;
+            case "path":
+                String pathName = data.path("pathName").asText();
+                if (!compiledPaths.contains(pathName)) {
+                    return false;
+                }
+                steps.add(new CompiledTrajectoryFile.Step(CompiledTrajectoryFile.STEP_PATH, pathName, 0));
+                return true;
+            case "named":
+                steps.add(new CompiledTrajectoryFile.Step(CompiledTrajectoryFile.STEP_NAMED, data.path("name").asText(), 0));
+                return true;
+            case "wait":
+                steps.add(new CompiledTrajectoryFile.Step(CompiledTrajectoryFile.STEP_WAIT, null, data.path("waitTime").asDouble()));
+                return true;
+            default:
+                return false;
+        }
+    }
+}
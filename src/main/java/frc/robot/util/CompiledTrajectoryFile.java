@@ -0,0 +1,307 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
+import com.pathplanner.lib.util.DriveFeedforwards;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Filesystem;
+
+/**
+ * Trajectories and autos compiled from the PathPlanner files at build time.
+ * The file is memory-mapped; only the small index is read when loading, trajectory states are read
+ * from the mapping when they are sampled, so there is no JSON parsing or trajectory generation on
+ * the robot.
+ *
+ * Layout (big endian):
+ * <pre>
+ * int magic, int version, int pathCount
+ *   per path: UTF name, int markerCount, (UTF name, double startSeconds, double endSeconds) per marker,
+ *             then for blue and red: long dataOffset, int stateCount
+ * int autoCount
+ *   per auto: UTF name, boolean resetOdom, int stepCount, (byte type, UTF name | double seconds) per step
+ * state data, STATE_DOUBLES doubles per state
+ * </pre>
+ * The red trajectories are generated from the flipped paths, markers are shared since flipping does
+ * not change timing.
+ */
+public class CompiledTrajectoryFile {
+    public static final String FILE_NAME = "compiled/trajectories.bin";
+    public static final int MAGIC = 0x50505443; // "PPTC"
+    public static final int VERSION = 1;
+    public static final int MODULE_COUNT = 4;
+    // time, x, y, rotation, vx, vy, omega, linear velocity, heading, then 5 feedforwards per module
+    public static final int STATE_DOUBLES = 9 + 5 * MODULE_COUNT;
+
+    public static final byte STEP_PATH = 0;
+    public static final byte STEP_NAMED = 1;
+    public static final byte STEP_WAIT = 2;
+
+    /**
+     * An event marker, a point marker has an end time below zero
+     */
+    public static final class Marker {
+        public final String name;
+        public final double startSeconds;
+        public final double endSeconds;
+
+        public Marker(String name, double startSeconds, double endSeconds) {
+            this.name = name;
+            this.startSeconds = startSeconds;
+            this.endSeconds = endSeconds;
+        }
+
+        public boolean isZone() {
+            return endSeconds >= 0;
+        }
+    }
+
+    /**
+     * One step of a compiled auto
+     */
+    public static final class Step {
+        public final byte type;
+        public final String name;
+        public final double waitSeconds;
+
+        public Step(byte type, String name, double waitSeconds) {
+            this.type = type;
+            this.name = name;
+            this.waitSeconds = waitSeconds;
+        }
+    }
+
+    public static final class Auto {
+        public final String name;
+        public final boolean resetOdom;
+        public final List<Step> steps;
+
+        public Auto(String name, boolean resetOdom, List<Step> steps) {
+            this.name = name;
+            this.resetOdom = resetOdom;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * A compiled trajectory, read directly from the mapped file
+     */
+    public static final class Trajectory {
+        private final ByteBuffer states;
+        private final int stateCount;
+        private final List<Marker> markers;
+
+        Trajectory(ByteBuffer states, int stateCount, List<Marker> markers) {
+            this.states = states;
+            this.stateCount = stateCount;
+            this.markers = markers;
+        }
+
+        public int getStateCount() {
+            return stateCount;
+        }
+
+        public List<Marker> getMarkers() {
+            return markers;
+        }
+
+        private double get(int state, int field) {
+            return states.getDouble((state * STATE_DOUBLES + field) * Double.BYTES);
+        }
+
+        public double getTotalTimeSeconds() {
+            return get(stateCount - 1, 0);
+        }
+
+        public Pose2d getInitialPose() {
+            return getState(0).pose;
+        }
+
+        public PathPlannerTrajectoryState getEndState() {
+            return getState(stateCount - 1);
+        }
+
+        public PathPlannerTrajectoryState getState(int index) {
+            return sampleBetween(index, index, 0);
+        }
+
+        /**
+         * Gets the interpolated state at a time, using a binary search over the states
+         */
+        public PathPlannerTrajectoryState sample(double timeSeconds) {
+            if (timeSeconds <= get(0, 0)) {
+                return getState(0);
+            }
+            if (timeSeconds >= getTotalTimeSeconds()) {
+                return getState(stateCount - 1);
+            }
+            int low = 0;
+            int high = stateCount - 1;
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+                if (get(mid, 0) <= timeSeconds) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            double lowTime = get(low, 0);
+            double highTime = get(high, 0);
+            double t = highTime > lowTime ? (timeSeconds - lowTime) / (highTime - lowTime) : 0;
+            return sampleBetween(low, high, t);
+        }
+
+        private double lerp(int low, int high, int field, double t) {
+            return MathUtil.interpolate(get(low, field), get(high, field), t);
+        }
+
+        private PathPlannerTrajectoryState sampleBetween(int low, int high, double t) {
+            PathPlannerTrajectoryState state = new PathPlannerTrajectoryState();
+            state.timeSeconds = lerp(low, high, 0, t);
+            Rotation2d lowRotation = new Rotation2d(get(low, 3));
+            state.pose = new Pose2d(lerp(low, high, 1, t), lerp(low, high, 2, t),
+                lowRotation.interpolate(new Rotation2d(get(high, 3)), t));
+            state.fieldSpeeds = new ChassisSpeeds(lerp(low, high, 4, t), lerp(low, high, 5, t), lerp(low, high, 6, t));
+            state.linearVelocity = lerp(low, high, 7, t);
+            state.heading = new Rotation2d(get(low, 8)).interpolate(new Rotation2d(get(high, 8)), t);
+
+            double[][] feedforwards = new double[5][MODULE_COUNT];
+            for (int kind = 0; kind < 5; kind++) {
+                for (int module = 0; module < MODULE_COUNT; module++) {
+                    feedforwards[kind][module] = lerp(low, high, 9 + kind * MODULE_COUNT + module, t);
+                }
+            }
+            state.feedforwards = new DriveFeedforwards(
+                feedforwards[0], feedforwards[1], feedforwards[2], feedforwards[3], feedforwards[4]);
+            return state;
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final Map<String, Trajectory[]> trajectories = new LinkedHashMap<>();
+    private final Map<String, Auto> autos = new LinkedHashMap<>();
+
+    private CompiledTrajectoryFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a compiled trajectory file, or compiled by another version");
+        }
+
+        int pathCount = buffer.getInt();
+        List<String> pathNames = new ArrayList<>();
+        List<List<Marker>> pathMarkers = new ArrayList<>();
+        long[][] offsets = new long[pathCount][2];
+        int[][] counts = new int[pathCount][2];
+        for (int i = 0; i < pathCount; i++) {
+            pathNames.add(readString(buffer));
+            int markerCount = buffer.getInt();
+            List<Marker> markers = new ArrayList<>();
+            for (int m = 0; m < markerCount; m++) {
+                markers.add(new Marker(readString(buffer), buffer.getDouble(), buffer.getDouble()));
+            }
+            pathMarkers.add(Collections.unmodifiableList(markers));
+            for (int alliance = 0; alliance < 2; alliance++) {
+                offsets[i][alliance] = buffer.getLong();
+                counts[i][alliance] = buffer.getInt();
+            }
+        }
+
+        int autoCount = buffer.getInt();
+        for (int i = 0; i < autoCount; i++) {
+            String name = readString(buffer);
+            boolean resetOdom = buffer.get() != 0;
+            int stepCount = buffer.getInt();
+            List<Step> steps = new ArrayList<>();
+            for (int s = 0; s < stepCount; s++) {
+                byte type = buffer.get();
+                if (type == STEP_WAIT) {
+                    steps.add(new Step(type, null, buffer.getDouble()));
+                } else {
+                    steps.add(new Step(type, readString(buffer), 0));
+                }
+            }
+            autos.put(name, new Auto(name, resetOdom, Collections.unmodifiableList(steps)));
+        }
+
+        // Offsets are relative to the start of the state data, which follows the index
+        int dataStart = buffer.position();
+        for (int i = 0; i < pathCount; i++) {
+            Trajectory[] alliances = new Trajectory[2];
+            for (int alliance = 0; alliance < 2; alliance++) {
+                ByteBuffer states = buffer.duplicate();
+                states.position(dataStart + (int) offsets[i][alliance]);
+                states = states.slice();
+                states.limit(counts[i][alliance] * STATE_DOUBLES * Double.BYTES);
+                alliances[alliance] = new Trajectory(states, counts[i][alliance], pathMarkers.get(i));
+            }
+            trajectories.put(pathNames.get(i), alliances);
+        }
+    }
+
+    // Same encoding as DataOutputStream.writeUTF for the names used here
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads the compiled trajectories from the deploy directory
+     * @return the compiled file, or empty if it was not built or is unreadable
+     */
+    public static Optional<CompiledTrajectoryFile> load() {
+        File file = new File(Filesystem.getDeployDirectory(), FILE_NAME);
+        if (!file.exists()) {
+            Logger.log("No compiled trajectories at " + file);
+            return Optional.empty();
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                FileChannel channel = randomAccessFile.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CompiledTrajectoryFile compiled = new CompiledTrajectoryFile(buffer);
+            Logger.log("Loaded " + compiled.trajectories.size() + " compiled trajectories and "
+                + compiled.autos.size() + " autos");
+            return Optional.of(compiled);
+        } catch (IOException e) {
+            Logger.error("Could not load compiled trajectories: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public boolean hasTrajectory(String pathName) {
+        return trajectories.containsKey(pathName);
+    }
+
+    /**
+     * @param pathName Name of the PathPlanner path
+     * @param red Whether to get the trajectory flipped for the red alliance
+     */
+    public Trajectory getTrajectory(String pathName, boolean red) {
+        Trajectory[] alliances = trajectories.get(pathName);
+        if (alliances == null) {
+            throw new IllegalArgumentException("No compiled trajectory for path: " + pathName);
+        }
+        return alliances[red ? 1 : 0];
+    }
+
+    public Map<String, Auto> getAutos() {
+        return Collections.unmodifiableMap(autos);
+    }
+}
@@ -0,0 +1,124 @@
+package frc.robot.util;
+
+import java.util.function.DoubleSupplier;
+
+import com.pathplanner.lib.config.RobotConfig;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Limits the driver's speeds to what the robot can do at the current elevator height, see
+ * {@link DriveLimits}. The translation is capped to the speed the robot can stop from, its changes
+ * to the acceleration limit and the changes of the acceleration to the jerk limit. The rotation is
+ * capped so the centripetal acceleration of a turn stays within the acceleration limit. With the
+ * carriage down the limits are the drivetrain's own, so the robot drives at full speed.
+ */
+public class DriveLimiter {
+    private static final double LOOP_SECONDS = 0.02;
+    // the limits are only recomputed after the elevator moved this much, in encoder units
+    private static final double ELEVATOR_UPDATE_DISTANCE = 0.1;
+
+    private final DoubleSupplier elevatorPosition;
+    private double lastElevatorPosition = Double.NaN;
+    private RobotConfig lastConfig = null;
+    private double maxSpeed;
+    private double maxAcceleration;
+    private double maxJerk;
+
+    // robot relative velocity and acceleration commanded in the last loop
+    private Translation2d velocity = new Translation2d();
+    private Translation2d acceleration = new Translation2d();
+
+    /**
+     * @param elevatorPosition Elevator height in encoder units
+     */
+    public DriveLimiter(DoubleSupplier elevatorPosition) {
+        this.elevatorPosition = elevatorPosition;
+        updateLimits();
+    }
+
+    /**
+     * Recomputes the limits when the elevator moved, call once per loop
+     */
+    public void updateLimits() {
+        double position = elevatorPosition.getAsDouble();
+        RobotConfig config = DriveConstants.pathPlannerConfig;
+        if (!Double.isNaN(lastElevatorPosition) && config == lastConfig
+                && Math.abs(position - lastElevatorPosition) < ELEVATOR_UPDATE_DISTANCE) {
+            return;
+        }
+        lastElevatorPosition = position;
+        lastConfig = config;
+
+        // without the PathPlanner settings only the tipping limit and the module speed are known
+        maxAcceleration = config != null
+            ? DriveLimits.getMaxAcceleration(config, position)
+            : DriveLimits.getTipAcceleration(position);
+        double maxVelocity = config != null ? DriveLimits.getMaxVelocity(config) : DriveConstants.MAX_SPEED_IN_MPS;
+        maxSpeed = Math.min(maxVelocity, DriveLimits.getStoppableSpeed(maxAcceleration));
+        maxJerk = DriveLimits.getMaxJerk(maxAcceleration);
+
+        SmartDashboard.putNumber("Drive/Limits/Max speed (mps)", maxSpeed);
+        SmartDashboard.putNumber("Drive/Limits/Max acceleration (mpss)", maxAcceleration);
+        SmartDashboard.putNumber("Drive/Limits/Max jerk (mpsss)", maxJerk);
+    }
+
+    /**
+     * @param desired Robot relative speeds asked for by the driver
+     * @return the speeds to command this loop
+     */
+    public ChassisSpeeds calculate(ChassisSpeeds desired) {
+        Translation2d target = new Translation2d(desired.vxMetersPerSecond, desired.vyMetersPerSecond);
+        if (target.getNorm() > maxSpeed) {
+            target = target.times(maxSpeed / target.getNorm());
+        }
+
+        // accelerate towards the target, slowly enough near it for the acceleration to ramp back down
+        Translation2d error = target.minus(velocity);
+        double errorNorm = error.getNorm();
+        Translation2d desiredAcceleration = new Translation2d();
+        if (errorNorm > 1e-9) {
+            double magnitude = Math.min(maxAcceleration, Math.sqrt(2 * maxJerk * errorNorm));
+            desiredAcceleration = error.times(Math.min(magnitude, errorNorm / LOOP_SECONDS) / errorNorm);
+        }
+        Translation2d accelerationChange = desiredAcceleration.minus(acceleration);
+        double maxChange = maxJerk * LOOP_SECONDS;
+        if (accelerationChange.getNorm() > maxChange) {
+            accelerationChange = accelerationChange.times(maxChange / accelerationChange.getNorm());
+        }
+        acceleration = acceleration.plus(accelerationChange);
+
+        Translation2d next = velocity.plus(acceleration.times(LOOP_SECONDS));
+        Translation2d remaining = target.minus(next);
+        if (remaining.getX() * error.getX() + remaining.getY() * error.getY() <= 0) {
+            // went past the target, settle on it instead of swinging back
+            velocity = target;
+            acceleration = new Translation2d();
+        } else {
+            velocity = next;
+        }
+
+        double maxOmega = maxAcceleration / Math.max(velocity.getNorm(), 1e-6);
+        double omega = MathUtil.clamp(desired.omegaRadiansPerSecond, -maxOmega, maxOmega);
+        return new ChassisSpeeds(velocity.getX(), velocity.getY(), omega);
+    }
+
+    /**
+     * Continues from speeds commanded by something else, with no acceleration
+     */
+    public void reset(ChassisSpeeds speeds) {
+        velocity = new Translation2d(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond);
+        acceleration = new Translation2d();
+    }
+
+    /**
+     * @return the highest translation speed at the current elevator height, in meters per second
+     */
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+}
@@ -0,0 +1,181 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.pathplanner.lib.config.ModuleConfig;
+import com.pathplanner.lib.config.RobotConfig;
+import com.pathplanner.lib.events.EventMarker;
+import com.pathplanner.lib.path.ConstraintsZone;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectory;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.DriveLimitConstants;
+import frc.robot.subsystems.ElevatorSubsystem;
+
+/**
+ * Physical limits of the drivetrain, used to make paths as fast as the robot allows.
+ * The acceleration is the lowest of what the drive motors can push at their current limit, what
+ * the wheels can transmit before slipping, and what keeps the robot from tipping with the center of
+ * mass raised by the elevator, and the speed is capped so the robot can stop within the stopping
+ * distance at that acceleration. The per-module torque and friction limits along a path are applied
+ * by the PathPlanner trajectory generator from the same robot config, these constraints only make
+ * sure the path does not cap the robot below them.
+ */
+public final class DriveLimits {
+    // markers of the autos that move the elevator, see the named commands in RobotContainer
+    public static final String RAISE_ELEVATOR_MARKER = "raiseElevator";
+    public static final String LOWER_ELEVATOR_MARKER = "lowerElevator";
+
+    private static final double GRAVITY = 9.81;
+
+    private DriveLimits() {}
+
+    /**
+     * @return the highest speed the modules can reach, in meters per second
+     */
+    public static double getMaxVelocity(RobotConfig config) {
+        return Math.min(config.moduleConfig.maxDriveVelocityMPS * DriveLimitConstants.LIMIT_SAFETY_FACTOR,
+            DriveConstants.MAX_SPEED_IN_MPS);
+    }
+
+    /**
+     * @param elevatorPosition Elevator height in encoder units
+     * @return the highest acceleration the robot can use, in meters per second squared
+     */
+    public static double getMaxAcceleration(RobotConfig config, double elevatorPosition) {
+        ModuleConfig module = config.moduleConfig;
+        double torqueLimit = config.numModules * module.driveMotor.getTorque(module.driveCurrentLimit)
+            / module.wheelRadiusMeters / config.massKG;
+        double tractionLimit = module.wheelCOF * GRAVITY;
+        double physicalLimit = Math.min(torqueLimit, tractionLimit) * DriveLimitConstants.LIMIT_SAFETY_FACTOR;
+        return Math.min(physicalLimit, getTipAcceleration(elevatorPosition));
+    }
+
+    /**
+     * Acceleration at which the robot would tip over the nearest wheels, times the safety factor
+     * @param elevatorPosition Elevator height in encoder units
+     */
+    public static double getTipAcceleration(double elevatorPosition) {
+        double supportHalfWidth = Math.min(DriveConstants.WHEEL_BASE, DriveConstants.TRACK_WIDTH) / 2;
+        return GRAVITY * supportHalfWidth / getCenterOfMassHeight(elevatorPosition) * DriveLimitConstants.TIP_SAFETY_FACTOR;
+    }
+
+    /**
+     * @param maxAcceleration Deceleration available for stopping, in meters per second squared
+     * @return the highest speed the robot can stop from within the stopping distance
+     */
+    public static double getStoppableSpeed(double maxAcceleration) {
+        return Math.sqrt(2 * maxAcceleration * DriveLimitConstants.STOP_DISTANCE_METERS);
+    }
+
+    /**
+     * @param maxAcceleration Acceleration limit, in meters per second squared
+     * @return the jerk that builds the acceleration up over the ramp time, in meters per second cubed
+     */
+    public static double getMaxJerk(double maxAcceleration) {
+        return maxAcceleration / DriveLimitConstants.ACCELERATION_RAMP_SECONDS;
+    }
+
+    /**
+     * Height of the center of mass, rising linearly with the carriage
+     * @param elevatorPosition Elevator height in encoder units
+     */
+    public static double getCenterOfMassHeight(double elevatorPosition) {
+        double raised = Math.max(0, Math.min(1, elevatorPosition / ElevatorSubsystem.getLevelHeight(3)));
+        return DriveLimitConstants.CG_HEIGHT_METERS + raised * DriveLimitConstants.CG_RISE_AT_TOP_METERS;
+    }
+
+    /**
+     * @param elevatorPosition Elevator height in encoder units
+     * @return the path constraints at the physical limits of the robot
+     */
+    public static PathConstraints getConstraints(RobotConfig config, double elevatorPosition) {
+        double driveBaseRadius = new Translation2d(DriveConstants.WHEEL_BASE / 2, DriveConstants.TRACK_WIDTH / 2).getNorm();
+        double maxAcceleration = getMaxAcceleration(config, elevatorPosition);
+        double maxVelocity = Math.min(getMaxVelocity(config), getStoppableSpeed(maxAcceleration));
+        return new PathConstraints(maxVelocity, maxAcceleration,
+            maxVelocity / driveBaseRadius, maxAcceleration / driveBaseRadius);
+    }
+
+    /**
+     * Replaces the global constraints of a path with the physical limits of the robot with the
+     * elevator down, and limits the part of the path where the autos have the elevator raised to the
+     * scoring level to the lower acceleration at that height. The elevator is up from a
+     * raiseElevator marker to the end of the path, and from the start of the path until it is back
+     * down after a lowerElevator marker. Constraint zones drawn in the path are kept.
+     * @throws IllegalStateException if the path moves the elevator but the scoring level is the stowed height
+     */
+    public static PathPlannerPath withPhysicalLimits(PathPlannerPath path, RobotConfig config) {
+        double raisedPosition = ElevatorSubsystem.getLevelHeight(Constants.AutoConstants.SCORING_LEVEL);
+        PathConstraints lowered = getConstraints(config, 0);
+        PathConstraints raised = getConstraints(config, raisedPosition);
+
+        List<ConstraintsZone> zones = new ArrayList<>(path.getConstraintZones());
+        double endPosition = path.getWaypoints().size() - 1;
+        boolean movesElevator = path.getEventMarkers().stream()
+            .anyMatch(marker -> marker.triggerName().equals(RAISE_ELEVATOR_MARKER)
+                || marker.triggerName().equals(LOWER_ELEVATOR_MARKER));
+        if (movesElevator && raisedPosition <= ElevatorSubsystem.getLevelHeight(0)) {
+            throw new IllegalStateException("Path " + path.name + " moves the elevator, but scoring level "
+                + Constants.AutoConstants.SCORING_LEVEL + " is at the stowed height");
+        }
+        if (raised.maxAccelerationMPSSq() < lowered.maxAccelerationMPSSq()) {
+            for (EventMarker marker : path.getEventMarkers()) {
+                if (marker.triggerName().equals(RAISE_ELEVATOR_MARKER)) {
+                    zones.add(new ConstraintsZone(marker.waypointRelativePos(), endPosition, raised));
+                } else if (marker.triggerName().equals(LOWER_ELEVATOR_MARKER)) {
+                    double loweredAt = positionAfterLowering(path, marker.waypointRelativePos(), raised, config,
+                        ElevatorSubsystem.estimateTravelSeconds(raisedPosition, 0));
+                    zones.add(new ConstraintsZone(0, loweredAt, raised));
+                }
+            }
+        }
+        return copyWith(path, zones, lowered);
+    }
+
+    /**
+     * Where along the path the elevator is down after lowering from a marker. Until then the robot
+     * drives at the raised limits, so the position is found on a trajectory with those limits.
+     */
+    private static double positionAfterLowering(PathPlannerPath path, double markerPosition,
+            PathConstraints raised, RobotConfig config, double loweringSeconds) {
+        Optional<PathPlannerTrajectory> trajectory = copyWith(path, path.getConstraintZones(), raised).getIdealTrajectory(config);
+        double endPosition = path.getWaypoints().size() - 1;
+        if (trajectory.isEmpty()) {
+            return endPosition;
+        }
+        double loweredSeconds = Double.NaN;
+        for (PathPlannerTrajectoryState state : trajectory.get().getStates()) {
+            if (Double.isNaN(loweredSeconds) && state.waypointRelativePos >= markerPosition) {
+                loweredSeconds = state.timeSeconds + loweringSeconds;
+            }
+            if (!Double.isNaN(loweredSeconds) && state.timeSeconds >= loweredSeconds) {
+                return state.waypointRelativePos;
+            }
+        }
+        return endPosition;
+    }
+
+    private static PathPlannerPath copyWith(PathPlannerPath path, List<ConstraintsZone> zones, PathConstraints constraints) {
+        PathPlannerPath copy = new PathPlannerPath(
+            path.getWaypoints(),
+            path.getRotationTargets(),
+            path.getPointTowardsZones(),
+            zones,
+            path.getEventMarkers(),
+            constraints,
+            path.getIdealStartingState(),
+            path.getGoalEndState(),
+            path.isReversed());
+        copy.name = path.name;
+        copy.preventFlipping = path.preventFlipping;
+        return copy;
+    }
+}
@@ -0,0 +1,432 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.IdealStartingState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.util.FlippingUtil;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.PathfinderConstants;
+
+/**
+ * Grid pathfinder over the PathPlanner navgrid, for fixed goals.
+ * The navgrid is stored as a bit-packed occupancy grid with a distance field to the nearest
+ * obstacle. For every goal a reverse Dijkstra cost-to-go map is computed once when loading, so
+ * planning from any start is a descent along decreasing cost followed by string pulling, instead of
+ * a search.
+ *
+ * Goals are in blue alliance coordinates. A goal on the red side is matched against the flipped
+ * goals, planned in the blue frame and flipped back.
+ */
+public class GridPathfinder {
+    private static final int[] NEIGHBOR_DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] NEIGHBOR_DY = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final double SQRT_2 = Math.sqrt(2);
+
+    private final double cellSize;
+    private final int width;
+    private final int height;
+    private final long[] obstacles;
+    // distance from each cell to the nearest obstacle in meters
+    private final float[] clearance;
+    private final Pose2d[] goals;
+    private final float[][] costToGo;
+
+    private volatile double lastPlanMillis = 0;
+
+    private GridPathfinder(double cellSize, int width, int height, long[] obstacles, Pose2d[] goals) {
+        this.cellSize = cellSize;
+        this.width = width;
+        this.height = height;
+        this.obstacles = obstacles;
+        this.clearance = computeClearance();
+        this.goals = goals;
+        this.costToGo = new float[goals.length][];
+        for (int i = 0; i < goals.length; i++) {
+            costToGo[i] = computeCostToGo(goals[i].getTranslation());
+        }
+    }
+
+    /**
+     * Loads pathplanner/navgrid.json from the deploy directory and precomputes the cost-to-go maps
+     * @param goals Goal poses in blue alliance coordinates
+     * @return the pathfinder, or empty if the navgrid could not be read
+     */
+    public static Optional<GridPathfinder> load(Pose2d... goals) {
+        File file = new File(Filesystem.getDeployDirectory(), "pathplanner/navgrid.json");
+        try {
+            long startNanos = System.nanoTime();
+            JsonNode json = new ObjectMapper().readTree(file);
+            JsonNode grid = json.get("grid");
+            int height = grid.size();
+            int width = grid.get(0).size();
+            long[] obstacles = new long[(width * height + 63) / 64];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (grid.get(y).get(x).asBoolean()) {
+                        int index = y * width + x;
+                        obstacles[index >>> 6] |= 1L << index;
+                    }
+                }
+            }
+            GridPathfinder pathfinder = new GridPathfinder(
+                json.get("nodeSizeMeters").asDouble(), width, height, obstacles, goals);
+            Logger.log("Grid pathfinder loaded " + width + "x" + height + " cells and " + goals.length
+                + " goals in " + (System.nanoTime() - startNanos) / 1e6 + " ms");
+            return Optional.of(pathfinder);
+        } catch (IOException | RuntimeException e) {
+            Logger.error("Could not load navgrid for the grid pathfinder: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private boolean isObstacle(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return true;
+        }
+        int index = y * width + x;
+        return (obstacles[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private int cellX(double xMeters) {
+        return (int) Math.floor(xMeters / cellSize);
+    }
+
+    private int cellY(double yMeters) {
+        return (int) Math.floor(yMeters / cellSize);
+    }
+
+    private Translation2d cellCenter(int index) {
+        return new Translation2d(((index % width) + 0.5) * cellSize, ((index / width) + 0.5) * cellSize);
+    }
+
+    /**
+     * Two pass chamfer distance transform, distances to the nearest obstacle cell in meters
+     */
+    private float[] computeClearance() {
+        float[] distance = new float[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                distance[y * width + x] = isObstacle(x, y) ? 0 : Float.MAX_VALUE;
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                relax(distance, x, y, -1, 0, 1);
+                relax(distance, x, y, 0, -1, 1);
+                relax(distance, x, y, -1, -1, SQRT_2);
+                relax(distance, x, y, 1, -1, SQRT_2);
+            }
+        }
+        for (int y = height - 1; y >= 0; y--) {
+            for (int x = width - 1; x >= 0; x--) {
+                relax(distance, x, y, 1, 0, 1);
+                relax(distance, x, y, 0, 1, 1);
+                relax(distance, x, y, 1, 1, SQRT_2);
+                relax(distance, x, y, -1, 1, SQRT_2);
+            }
+        }
+        for (int i = 0; i < distance.length; i++) {
+            distance[i] *= cellSize;
+        }
+        return distance;
+    }
+
+    private void relax(float[] distance, int x, int y, int dx, int dy, double step) {
+        int nx = x + dx;
+        int ny = y + dy;
+        if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+            return;
+        }
+        float candidate = (float) (distance[ny * width + nx] + step);
+        if (candidate < distance[y * width + x]) {
+            distance[y * width + x] = candidate;
+        }
+    }
+
+    /**
+     * Cost of moving through a cell, raised near obstacles so paths keep their distance when they can
+     */
+    private double cellCost(int index) {
+        double margin = PathfinderConstants.CLEARANCE_METERS - clearance[index];
+        if (margin <= 0) {
+            return 1;
+        }
+        return 1 + PathfinderConstants.OBSTACLE_PENALTY * margin / PathfinderConstants.CLEARANCE_METERS;
+    }
+
+    /**
+     * Reverse Dijkstra from a goal. Goals usually sit inside the inflated obstacles (against the reef
+     * or a coral station), so the search is seeded from the free cells around the goal with their
+     * straight line distance, the final approach is driven straight.
+     */
+    private float[] computeCostToGo(Translation2d goal) {
+        float[] cost = new float[width * height];
+        Arrays.fill(cost, Float.POSITIVE_INFINITY);
+        // entries are the float bits of the cost (ordered like the costs since they are positive) and the cell index
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+
+        int seedCells = (int) Math.ceil(PathfinderConstants.GOAL_SEED_RADIUS_METERS / cellSize);
+        int goalX = cellX(goal.getX());
+        int goalY = cellY(goal.getY());
+        for (int y = goalY - seedCells; y <= goalY + seedCells; y++) {
+            for (int x = goalX - seedCells; x <= goalX + seedCells; x++) {
+                if (isObstacle(x, y)) {
+                    continue;
+                }
+                int index = y * width + x;
+                double distance = cellCenter(index).getDistance(goal);
+                if (distance <= PathfinderConstants.GOAL_SEED_RADIUS_METERS) {
+                    cost[index] = (float) distance;
+                    queue.add(((long) Float.floatToIntBits(cost[index]) << 32) | index);
+                }
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int index = (int) entry;
+            float entryCost = Float.intBitsToFloat((int) (entry >>> 32));
+            if (entryCost > cost[index]) {
+                continue;
+            }
+            int x = index % width;
+            int y = index / width;
+            for (int n = 0; n < NEIGHBOR_DX.length; n++) {
+                int nx = x + NEIGHBOR_DX[n];
+                int ny = y + NEIGHBOR_DY[n];
+                if (isObstacle(nx, ny)) {
+                    continue;
+                }
+                // no cutting corners between two obstacles
+                if (n >= 4 && (isObstacle(nx, y) || isObstacle(x, ny))) {
+                    continue;
+                }
+                int neighbor = ny * width + nx;
+                double step = (n >= 4 ? SQRT_2 : 1) * cellSize * 0.5 * (cellCost(index) + cellCost(neighbor));
+                float candidate = (float) (cost[index] + step);
+                if (candidate < cost[neighbor]) {
+                    cost[neighbor] = candidate;
+                    queue.add(((long) Float.floatToIntBits(candidate) << 32) | neighbor);
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Finds the precomputed goal at a pose
+     * @return the goal index, or -1 if the pose is not a goal
+     */
+    private int findGoal(Translation2d pose) {
+        for (int i = 0; i < goals.length; i++) {
+            if (goals[i].getTranslation().getDistance(pose) < PathfinderConstants.GOAL_MATCH_TOLERANCE_METERS) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether the straight line between two points only crosses free cells
+     */
+    private boolean hasLineOfSight(Translation2d from, Translation2d to) {
+        double distance = from.getDistance(to);
+        int steps = (int) Math.ceil(distance / (cellSize * 0.25));
+        for (int i = 0; i <= steps; i++) {
+            Translation2d point = from.interpolate(to, steps == 0 ? 0 : (double) i / steps);
+            if (isObstacle(cellX(point.getX()), cellY(point.getY()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plans a path to one of the precomputed goals
+     * @param start Current robot pose
+     * @param startSpeedMetersPerSecond Current robot speed
+     * @param goal Goal pose, must be one of the goals or a goal flipped to the red side
+     * @param constraints Constraints of the path
+     * @return the path, or empty if the goal is not precomputed or cannot be reached
+     */
+    public Optional<PathPlannerPath> plan(Pose2d start, double startSpeedMetersPerSecond, Pose2d goal, PathConstraints constraints) {
+        return plan(start, startSpeedMetersPerSecond, goal, 0.0, constraints);
+    }
+
+    /**
+     * Plans a path to one of the precomputed goals, arriving with a speed to carry into a next path.
+     * Only reads the precomputed maps, so it can be called from another thread.
+     * @param start Robot pose at the start of the path
+     * @param startSpeedMetersPerSecond Robot speed at the start of the path
+     * @param goal Goal pose, must be one of the goals or a goal flipped to the red side
+     * @param endSpeedMetersPerSecond Robot speed at the goal
+     * @param constraints Constraints of the path
+     * @return the path, or empty if the goal is not precomputed or cannot be reached
+     */
+    public Optional<PathPlannerPath> plan(Pose2d start, double startSpeedMetersPerSecond, Pose2d goal,
+            double endSpeedMetersPerSecond, PathConstraints constraints) {
+        long startNanos = System.nanoTime();
+        boolean flipped = false;
+        int goalIndex = findGoal(goal.getTranslation());
+        if (goalIndex < 0) {
+            goalIndex = findGoal(FlippingUtil.flipFieldPosition(goal.getTranslation()));
+            flipped = true;
+        }
+        if (goalIndex < 0) {
+            return Optional.empty();
+        }
+        Translation2d startTranslation = flipped ? FlippingUtil.flipFieldPosition(start.getTranslation()) : start.getTranslation();
+        Translation2d goalTranslation = goals[goalIndex].getTranslation();
+        float[] cost = costToGo[goalIndex];
+
+        List<Translation2d> points = new ArrayList<>();
+        points.add(startTranslation);
+        int index = nearestReachableCell(startTranslation, cost);
+        if (index < 0) {
+            return Optional.empty();
+        }
+        // descend the cost-to-go map, every step lowers the cost until a goal seed cell is reached
+        List<Integer> cells = new ArrayList<>();
+        cells.add(index);
+        while (true) {
+            int x = index % width;
+            int y = index / width;
+            int best = index;
+            for (int n = 0; n < NEIGHBOR_DX.length; n++) {
+                int nx = x + NEIGHBOR_DX[n];
+                int ny = y + NEIGHBOR_DY[n];
+                if (!isObstacle(nx, ny) && cost[ny * width + nx] < cost[best]) {
+                    best = ny * width + nx;
+                }
+            }
+            if (best == index) {
+                break;
+            }
+            index = best;
+            cells.add(index);
+        }
+
+        // string pulling: skip every cell center the path can see past
+        Translation2d anchor = startTranslation;
+        for (int i = 1; i < cells.size(); i++) {
+            if (!hasLineOfSight(anchor, cellCenter(cells.get(i)))) {
+                anchor = cellCenter(cells.get(i - 1));
+                points.add(anchor);
+            }
+        }
+        if (!hasLineOfSight(anchor, cellCenter(cells.get(cells.size() - 1)))
+                || anchor.getDistance(goalTranslation) > PathfinderConstants.GOAL_SEED_RADIUS_METERS) {
+            points.add(cellCenter(cells.get(cells.size() - 1)));
+        }
+        points.add(goalTranslation);
+
+        if (flipped) {
+            points.replaceAll(FlippingUtil::flipFieldPosition);
+        }
+        points.set(0, start.getTranslation());
+        points.set(points.size() - 1, goal.getTranslation());
+        // drop points too close together to make a curve through
+        for (int i = points.size() - 2; i >= 1; i--) {
+            if (points.get(i).getDistance(points.get(i + 1)) < cellSize * 0.5) {
+                points.remove(i);
+            }
+        }
+        if (points.size() < 2 || points.get(0).getDistance(points.get(1)) < 0.01) {
+            return Optional.empty();
+        }
+
+        List<Pose2d> poses = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            Translation2d previous = points.get(Math.max(0, i - 1));
+            Translation2d next = points.get(Math.min(points.size() - 1, i + 1));
+            Translation2d direction = next.minus(previous);
+            poses.add(new Pose2d(points.get(i), direction.getAngle()));
+        }
+
+        PathPlannerPath path = new PathPlannerPath(
+            PathPlannerPath.waypointsFromPoses(poses),
+            constraints,
+            new IdealStartingState(startSpeedMetersPerSecond, start.getRotation()),
+            new GoalEndState(endSpeedMetersPerSecond, goal.getRotation()));
+        // the path is already in field coordinates for the current alliance
+        path.preventFlipping = true;
+
+        lastPlanMillis = (System.nanoTime() - startNanos) / 1e6;
+        return Optional.of(path);
+    }
+
+    /**
+     * The start cell, or the closest free cell with a cost if the robot is on an obstacle
+     */
+    private int nearestReachableCell(Translation2d start, float[] cost) {
+        int startX = cellX(start.getX());
+        int startY = cellY(start.getY());
+        for (int radius = 0; radius <= Math.max(width, height); radius++) {
+            int best = -1;
+            double bestDistance = Double.MAX_VALUE;
+            for (int y = startY - radius; y <= startY + radius; y++) {
+                for (int x = startX - radius; x <= startX + radius; x++) {
+                    if (isObstacle(x, y) || Float.isInfinite(cost[y * width + x])) {
+                        continue;
+                    }
+                    double distance = cellCenter(y * width + x).getDistance(start);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = y * width + x;
+                    }
+                }
+            }
+            if (best >= 0) {
+                return best;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param goal Goal pose in blue alliance coordinates
+     * @return index of the precomputed goal, or -1 if the pose is not a goal
+     */
+    public int getGoalIndex(Pose2d goal) {
+        return findGoal(goal.getTranslation());
+    }
+
+    /**
+     * Estimates the length of the path to a goal from its cost-to-go map, without planning.
+     * Near obstacles the estimate is a little longer than the path, by the obstacle penalty.
+     * @param start Start position in blue alliance coordinates
+     * @param goalIndex Index from {@link #getGoalIndex(Pose2d)}
+     * @return the estimated path length in meters, the straight line distance if the start is not on the grid
+     */
+    public double estimatePathLength(Translation2d start, int goalIndex) {
+        int x = cellX(start.getX());
+        int y = cellY(start.getY());
+        Translation2d goal = goals[goalIndex].getTranslation();
+        if (isObstacle(x, y) || Float.isInfinite(costToGo[goalIndex][y * width + x])) {
+            return start.getDistance(goal);
+        }
+        int index = y * width + x;
+        return costToGo[goalIndex][index] + start.getDistance(cellCenter(index));
+    }
+
+    /**
+     * @return time the last plan took in milliseconds
+     */
+    public double getLastPlanMillis() {
+        return lastPlanMillis;
+    }
+}
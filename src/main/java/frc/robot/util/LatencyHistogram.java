@@ -0,0 +1,90 @@
+package frc.robot.util;
+
+import java.util.Arrays;
+
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Histogram of latencies with fixed 1 ms buckets.
+ * Every sample is also written to the data log, the histogram and its percentiles are published to
+ * SmartDashboard under "Latency/name".
+ */
+public class LatencyHistogram {
+    private static final double BUCKET_WIDTH_MS = 1.0;
+    private static final int BUCKET_COUNT = 200; // the last bucket collects everything slower
+
+    private final String name;
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private final DoubleLogEntry logEntry;
+    private long count = 0;
+    private double sumMs = 0;
+    private double maxMs = 0;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        logEntry = new DoubleLogEntry(DataLogManager.getLog(), "/latency/" + name + "Ms");
+    }
+
+    /**
+     * Record one latency sample
+     * @param latencySeconds The measured latency in seconds
+     */
+    public synchronized void record(double latencySeconds) {
+        double latencyMs = latencySeconds * 1000.0;
+        if (Double.isNaN(latencyMs) || latencyMs < 0) {
+            return;
+        }
+        int bucket = (int) Math.min(BUCKET_COUNT - 1, latencyMs / BUCKET_WIDTH_MS);
+        buckets[bucket]++;
+        count++;
+        sumMs += latencyMs;
+        maxMs = Math.max(maxMs, latencyMs);
+        logEntry.append(latencyMs);
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 1
+     * @return upper edge of the bucket containing the percentile, in milliseconds
+     */
+    public synchronized double getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return (i + 1) * BUCKET_WIDTH_MS;
+            }
+        }
+        return maxMs;
+    }
+
+    /**
+     * Clears all samples, e.g. before measuring the effect of a change
+     */
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        sumMs = 0;
+        maxMs = 0;
+    }
+
+    public synchronized void publish() {
+        String prefix = "Latency/" + name + "/";
+        double[] histogram = new double[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            histogram[i] = buckets[i];
+        }
+        SmartDashboard.putNumberArray(prefix + "Histogram (1 ms buckets)", histogram);
+        SmartDashboard.putNumber(prefix + "Count", count);
+        SmartDashboard.putNumber(prefix + "Mean (ms)", count == 0 ? 0 : sumMs / count);
+        SmartDashboard.putNumber(prefix + "P50 (ms)", getPercentileMs(0.5));
+        SmartDashboard.putNumber(prefix + "P95 (ms)", getPercentileMs(0.95));
+        SmartDashboard.putNumber(prefix + "P99 (ms)", getPercentileMs(0.99));
+        SmartDashboard.putNumber(prefix + "Max (ms)", maxMs);
+    }
+}
@@ -0,0 +1,69 @@
+package frc.robot.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Keeps track of the end-to-end latency histograms of the robot.
+ * Samples are stamped with their origin timestamp where they enter the robot code (a driver input,
+ * a camera frame), the stamp is carried along with the data, and the latency is recorded where the
+ * data is finally used (motor controller reference, fused pose read by a command).
+ */
+public class LatencyTracer {
+    // Driver stick change to the drive motor controller references
+    public static final String DRIVER_INPUT_TO_ACTUATOR = "DriverInputToActuator";
+    // Camera capture to the measurement being fused by the pose estimator
+    public static final String CAMERA_TO_FUSION = "CameraToFusion";
+    // Camera capture to the fused pose first being read after that measurement
+    public static final String CAMERA_TO_POSE_USE = "CameraToPoseUse";
+
+    private static final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private static double loopStartSeconds = 0;
+    private static int publishCounter = 0;
+
+    private LatencyTracer() {}
+
+    /**
+     * Call at the start of every robot loop, right after new driver station data is available
+     */
+    public static void markLoopStart() {
+        loopStartSeconds = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * @return FPGA timestamp of the start of the current robot loop in seconds
+     */
+    public static double getLoopStartSeconds() {
+        return loopStartSeconds;
+    }
+
+    /**
+     * Record a latency from an origin timestamp to now
+     * @param name Name of the histogram
+     * @param originSeconds FPGA timestamp in seconds the data was created, NaN if untraced
+     */
+    public static void recordSince(String name, double originSeconds) {
+        if (Double.isNaN(originSeconds)) {
+            return;
+        }
+        getHistogram(name).record(Timer.getFPGATimestamp() - originSeconds);
+    }
+
+    public static synchronized LatencyHistogram getHistogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Publish all histograms, about once per second
+     */
+    public static synchronized void periodic() {
+        if (publishCounter++ % 50 != 0) {
+            return;
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.publish();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package frc.robot.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.pathplanner.lib.commands.FollowPathCommand;
+import com.pathplanner.lib.commands.PathfindingCommand;
+
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+
+/**
+ * Auto chooser that only loads the auto that is selected.
+ * While the robot is disabled, the selected auto is preloaded for the current alliance on a
+ * background thread (file reads, flipping, running the follower code on synthetic input so it is
+ * compiled by the JIT), then its command is built on the main thread, so autonomousInit only has
+ * to schedule it.
+ *
+ * Commands are built on the main thread because composing them registers them with the
+ * CommandScheduler, which is not thread safe. Only the warm-up runs in the background: a compiled
+ * auto is cheap to build, but a PathPlanner auto still parses its files while it is built, so that
+ * happens in a disabled loop, and the time it takes is published as Auto/Build time (ms).
+ */
+public class LazyAutoChooser {
+    private static final String NONE = "None";
+
+    private final SendableChooser<String> chooser = new SendableChooser<>();
+    private final Function<String, Command> commandFactory;
+    private final BiConsumer<String, Boolean> preloader;
+    private final Map<String, Command> commands = new HashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AutoWarmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private String preloadedName = null;
+    private boolean preloadedRed = false;
+    private Future<?> preload = null;
+    private boolean pathPlannerWarmedUp = false;
+
+    /**
+     * @param autoNames Names of the autos that can be selected
+     * @param defaultAutoName Auto selected by default
+     * @param commandFactory Builds the command of an auto, called on the main thread
+     * @param preloader Loads and warms up an auto for an alliance (true for red), called on a background thread
+     */
+    public LazyAutoChooser(List<String> autoNames, String defaultAutoName,
+            Function<String, Command> commandFactory, BiConsumer<String, Boolean> preloader) {
+        this.commandFactory = commandFactory;
+        this.preloader = preloader;
+
+        chooser.setDefaultOption(NONE, NONE);
+        for (String name : autoNames) {
+            if (name.equals(defaultAutoName)) {
+                chooser.setDefaultOption(name, name);
+            } else {
+                chooser.addOption(name, name);
+            }
+        }
+        SmartDashboard.putData("Auto Chooser", chooser);
+    }
+
+    /**
+     * Call every loop while disabled. Starts preloading when the selection or alliance changes and
+     * builds the command once the preload is done.
+     * @param red Whether the robot is on the red alliance
+     */
+    public void disabledPeriodic(boolean red) {
+        if (!pathPlannerWarmedUp) {
+            // PathPlanner's own warm-up of path following and the pathfinder, without moving the robot
+            FollowPathCommand.warmupCommand().schedule();
+            PathfindingCommand.warmupCommand().schedule();
+            pathPlannerWarmedUp = true;
+        }
+
+        String selected = chooser.getSelected();
+        if (selected == null || selected.equals(NONE)) {
+            SmartDashboard.putBoolean("Auto/Ready", true);
+            return;
+        }
+        if (!selected.equals(preloadedName) || red != preloadedRed) {
+            if (preload != null) {
+                preload.cancel(false);
+            }
+            preloadedName = selected;
+            preloadedRed = red;
+            long startNanos = System.nanoTime();
+            preload = executor.submit(() -> {
+                preloader.accept(selected, red);
+                Logger.log("Preloaded auto " + selected + " for the " + (red ? "red" : "blue") + " alliance in "
+                    + (System.nanoTime() - startNanos) / 1e6 + " ms");
+            });
+        }
+
+        boolean ready = preload.isDone();
+        if (ready && !commands.containsKey(selected)) {
+            long buildStartNanos = System.nanoTime();
+            commands.put(selected, commandFactory.apply(selected));
+            SmartDashboard.putNumber("Auto/Build time (ms)", (System.nanoTime() - buildStartNanos) / 1e6);
+        }
+        SmartDashboard.putBoolean("Auto/Ready", ready);
+    }
+
+    /**
+     * @return the command of the selected auto, built now if it was not preloaded
+     */
+    public Command getSelected() {
+        String selected = chooser.getSelected();
+        if (selected == null || selected.equals(NONE)) {
+            return Commands.none();
+        }
+        Command command = commands.get(selected);
+        if (command == null) {
+            Logger.log("Auto " + selected + " was not preloaded, building it now");
+            command = commandFactory.apply(selected);
+            commands.put(selected, command);
+        }
+        return command;
+    }
+}
@@ -0,0 +1,114 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+import com.revrobotics.spark.SparkBase.PersistMode;
+import com.revrobotics.spark.SparkBase.ResetMode;
+import com.revrobotics.spark.SparkMax;
+import com.revrobotics.spark.config.SparkMaxConfig;
+
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj2.command.Command;
+
+/**
+ * Samples the voltage, position and velocity of the motors of a mechanism into the DataLog while a
+ * SysId routine runs. The routine itself logs once per robot loop for the WPILib SysId tool, this
+ * samples four times as often on a notifier thread, and has the motor controllers send those
+ * signals every 5 ms instead of their default 10 to 20 ms for the duration of the test.
+ * Every motor gets an entry SysId/mechanism/motor holding [volts, position, velocity], read by
+ * the SysIdAnalyzer tool.
+ */
+public class SysIdSampler {
+    public static final String LOG_PREFIX = "SysId/";
+    private static final double PERIOD_SECONDS = 0.005;
+    private static final int FAST_SIGNAL_PERIOD_MS = 5;
+    // REV's default status periods
+    private static final int DEFAULT_APPLIED_OUTPUT_PERIOD_MS = 10;
+    private static final int DEFAULT_ENCODER_PERIOD_MS = 20;
+
+    private static final class Channel {
+        final SparkMax motor;
+        final DoubleSupplier position;
+        final DoubleSupplier velocity;
+        final DoubleArrayLogEntry entry;
+
+        Channel(SparkMax motor, DoubleSupplier position, DoubleSupplier velocity, DoubleArrayLogEntry entry) {
+            this.motor = motor;
+            this.position = position;
+            this.velocity = velocity;
+            this.entry = entry;
+        }
+    }
+
+    private final String mechanism;
+    private final List<Channel> channels = new ArrayList<>();
+    private final Notifier notifier = new Notifier(this::sample);
+
+    /**
+     * @param mechanism Name of the mechanism, the analyzer fits one set of gains per mechanism
+     */
+    public SysIdSampler(String mechanism) {
+        this.mechanism = mechanism;
+        notifier.setName("SysId " + mechanism);
+    }
+
+    /**
+     * Adds a motor to sample, its voltage is read from the motor controller
+     * @param position Position in the units the gains are fit in
+     * @param velocity Velocity in the same units per second
+     */
+    public SysIdSampler add(String motorName, SparkMax motor, DoubleSupplier position, DoubleSupplier velocity) {
+        channels.add(new Channel(motor, position, velocity,
+            new DoubleArrayLogEntry(DataLogManager.getLog(), LOG_PREFIX + mechanism + "/" + motorName)));
+        return this;
+    }
+
+    /**
+     * @return the routine command, sampling while it runs
+     */
+    public Command sampling(Command routine) {
+        return routine.beforeStarting(this::start).finallyDo(this::stop);
+    }
+
+    private void start() {
+        Logger.log("SysId: sampling " + mechanism);
+        setSignalPeriods(FAST_SIGNAL_PERIOD_MS, FAST_SIGNAL_PERIOD_MS);
+        notifier.startPeriodic(PERIOD_SECONDS);
+    }
+
+    private void stop() {
+        notifier.stop();
+        setSignalPeriods(DEFAULT_APPLIED_OUTPUT_PERIOD_MS, DEFAULT_ENCODER_PERIOD_MS);
+        Logger.log("SysId: stopped sampling " + mechanism);
+    }
+
+    private void sample() {
+        for (Channel channel : channels) {
+            channel.entry.append(new double[] {
+                channel.motor.getAppliedOutput() * channel.motor.getBusVoltage(),
+                channel.position.getAsDouble(),
+                channel.velocity.getAsDouble()});
+        }
+    }
+
+    /**
+     * Changes only the status periods, the rest of the motor configuration is kept
+     */
+    private void setSignalPeriods(int appliedOutputPeriodMs, int encoderPeriodMs) {
+        SparkMaxConfig signals = new SparkMaxConfig();
+        signals.signals
+            .appliedOutputPeriodMs(appliedOutputPeriodMs)
+            .busVoltagePeriodMs(appliedOutputPeriodMs)
+            .primaryEncoderPositionPeriodMs(encoderPeriodMs)
+            .primaryEncoderVelocityPeriodMs(encoderPeriodMs)
+            .absoluteEncoderPositionPeriodMs(encoderPeriodMs)
+            .absoluteEncoderVelocityPeriodMs(encoderPeriodMs);
+        for (Channel channel : channels) {
+            channel.motor.configure(signals, ResetMode.kNoResetSafeParameters, PersistMode.kNoPersistParameters);
+        }
+    }
+}